@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket bandwidth limiter.
+ * 
+ * Bytes of requests are acquired before sending, bytes of responses are
+ * consumed after receiving, because their size is not known in advance. The
+ * consumed bytes may therefore drive the tokens negative, the next acquire
+ * blocks until that debt is paid back.
+ */
+public class BandwidthLimiter {
+
+	/**
+	 * Rate in bytes per second.
+	 */
+	private final long bytesPerSecond;
+	/**
+	 * Maximum tokens in bytes.
+	 */
+	private final long burst;
+	/**
+	 * Available tokens in bytes. May be negative.
+	 */
+	private long tokens;
+	/**
+	 * Nano time of last refill.
+	 */
+	private long last;
+
+	/**
+	 * Create bandwidth limiter.
+	 * 
+	 * The burst is set to 100ms of the rate, but at least 64 KB.
+	 * 
+	 * @param bytesPerSecond rate in bytes per second
+	 * @throws IllegalArgumentException if the rate is not greater than 0.
+	 */
+	public BandwidthLimiter(long bytesPerSecond) {
+		if (bytesPerSecond <= 0) {
+			throw new IllegalArgumentException("Rate " + bytesPerSecond + " must be greater than 0!");
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		this.burst = Math.max(bytesPerSecond / 10, 64 * 1024);
+		this.tokens = burst;
+		this.last = System.nanoTime();
+	}
+
+	/**
+	 * Acquire bytes.
+	 * 
+	 * Blocks until the tokens are not negative.
+	 * 
+	 * @param bytes bytes to acquire
+	 */
+	public void acquire(long bytes) {
+		long delay;
+		while ((delay = acquireDelay(bytes)) > 0) {
+			LockSupport.parkNanos(delay);
+		}
+	}
+
+	/**
+	 * Try to acquire bytes.
+	 * 
+	 * Doesn't block.
+	 * 
+	 * @param bytes bytes to acquire
+	 * @return {@code true}, if acquired, {@code false}, if the tokens are
+	 *         negative.
+	 */
+	public boolean tryAcquire(long bytes) {
+		return acquireDelay(bytes) == 0;
+	}
+
+	/**
+	 * Consume bytes.
+	 * 
+	 * Doesn't block.
+	 * 
+	 * @param bytes bytes to consume
+	 */
+	public synchronized void consume(long bytes) {
+		refill();
+		tokens -= bytes;
+	}
+
+	/**
+	 * Acquire bytes, if the tokens are not negative.
+	 * 
+	 * @param bytes bytes to acquire
+	 * @return {@code 0}, if acquired, or nanoseconds to wait before retry.
+	 */
+	private synchronized long acquireDelay(long bytes) {
+		refill();
+		if (tokens >= 0) {
+			tokens -= bytes;
+			return 0;
+		}
+		return (long) (-tokens * (double) TimeUnit.SECONDS.toNanos(1) / bytesPerSecond) + 1;
+	}
+
+	/**
+	 * Refill tokens according the passed time.
+	 */
+	private void refill() {
+		long now = System.nanoTime();
+		long refill = (long) ((now - last) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+		if (refill > 0) {
+			tokens = Math.min(burst, tokens + refill);
+			last = now;
+		}
+	}
+}
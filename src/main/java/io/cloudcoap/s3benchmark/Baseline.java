@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Baseline of benchmark results.
+ * 
+ * Stores results into a properties file and compares results against a stored
+ * baseline. A regression requires, that the difference exceeds the tolerance.
+ * If both results contain at least {@link #MIN_SAMPLES} interval samples, the
+ * difference of the throughput and the 99% latency percentile must also be
+ * significant according a one-sided Mann-Whitney U test.
+ */
+public class Baseline {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Baseline.class);
+
+	/**
+	 * Minimum number of interval samples for the statistical test.
+	 */
+	public static final int MIN_SAMPLES = 3;
+	/**
+	 * Key of property with the names of the results.
+	 */
+	private static final String NAMES = "names";
+
+	/**
+	 * Tolerance of throughput decrease in percent.
+	 */
+	private final double throughputTolerance;
+	/**
+	 * Tolerance of latency increase in percent.
+	 */
+	private final double latencyTolerance;
+	/**
+	 * Tolerance of error rate increase in percentage points.
+	 */
+	private final double errorTolerance;
+	/**
+	 * Significance level of the statistical test.
+	 */
+	private final double significance;
+
+	/**
+	 * Create baseline comparison.
+	 * 
+	 * @param throughputTolerance tolerance of throughput decrease in percent
+	 * @param latencyTolerance    tolerance of latency increase in percent
+	 * @param errorTolerance      tolerance of error rate increase in percentage
+	 *                            points
+	 * @param significance        significance level of the statistical test
+	 */
+	public Baseline(double throughputTolerance, double latencyTolerance, double errorTolerance,
+			double significance) {
+		this.throughputTolerance = throughputTolerance;
+		this.latencyTolerance = latencyTolerance;
+		this.errorTolerance = errorTolerance;
+		this.significance = significance;
+	}
+
+	/**
+	 * Save results.
+	 * 
+	 * @param file    file to save the results
+	 * @param results results to save
+	 * @throws IOException if an i/o error occurred
+	 */
+	public static void save(File file, List<BenchmarkResult> results) throws IOException {
+		Properties properties = new Properties();
+		StringBuilder names = new StringBuilder();
+		for (BenchmarkResult result : results) {
+			if (names.length() > 0) {
+				names.append(",");
+			}
+			names.append(result.name);
+			result.store(properties);
+		}
+		properties.setProperty(NAMES, names.toString());
+		try (OutputStream out = new FileOutputStream(file)) {
+			properties.store(out, "S3 benchmark results");
+		}
+	}
+
+	/**
+	 * Load results.
+	 * 
+	 * @param file file with the results
+	 * @return loaded results
+	 * @throws IOException              if an i/o error occurred
+	 * @throws IllegalArgumentException if the file contains invalid values
+	 */
+	public static List<BenchmarkResult> load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+		List<BenchmarkResult> results = new ArrayList<>();
+		String names = properties.getProperty(NAMES, "");
+		for (String name : names.split(",")) {
+			if (!name.isEmpty()) {
+				BenchmarkResult result = BenchmarkResult.load(name, properties);
+				if (result != null) {
+					results.add(result);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Compare results against the baseline.
+	 * 
+	 * Logs a table with the differences.
+	 * 
+	 * @param baseline results of the baseline
+	 * @param results  current results
+	 * @return {@code true}, if a significant regression is detected,
+	 *         {@code false}, otherwise.
+	 */
+	public boolean compare(List<BenchmarkResult> baseline, List<BenchmarkResult> results) {
+		boolean regression = false;
+		LOGGER.info("Baseline comparison:");
+		LOGGER.info(String.format("%-20s %-10s %12s %12s %9s %8s %s", "result", "metric", "baseline", "current",
+				"diff", "p-value", ""));
+		for (BenchmarkResult result : results) {
+			BenchmarkResult base = find(baseline, result.name);
+			if (base == null) {
+				LOGGER.info(String.format("%-20s no baseline", result.name));
+				continue;
+			}
+			double p = -1;
+			if (base.throughputSamples.length >= MIN_SAMPLES && result.throughputSamples.length >= MIN_SAMPLES) {
+				p = mannWhitney(result.throughputSamples, base.throughputSamples);
+			}
+			double diff = change(base.getRequestsPerSecond(), result.getRequestsPerSecond());
+			boolean failed = -diff > throughputTolerance && (p < 0 || p < significance);
+			line(result.name, "requests/s", Long.toString(base.getRequestsPerSecond()),
+					Long.toString(result.getRequestsPerSecond()), diff, p, failed);
+			regression |= failed;
+
+			diff = change(base.p50, result.p50);
+			failed = diff > latencyTolerance;
+			line(result.name, "50% ms", LatencyHistogram.format(base.p50), LatencyHistogram.format(result.p50), diff,
+					-1, failed);
+			regression |= failed;
+
+			p = -1;
+			if (base.p99Samples.length >= MIN_SAMPLES && result.p99Samples.length >= MIN_SAMPLES) {
+				p = mannWhitney(base.p99Samples, result.p99Samples);
+			}
+			diff = change(base.p99, result.p99);
+			failed = diff > latencyTolerance && (p < 0 || p < significance);
+			line(result.name, "99% ms", LatencyHistogram.format(base.p99), LatencyHistogram.format(result.p99), diff,
+					p, failed);
+			regression |= failed;
+
+			diff = change(base.p999, result.p999);
+			line(result.name, "99.9% ms", LatencyHistogram.format(base.p999), LatencyHistogram.format(result.p999),
+					diff, -1, false);
+
+			diff = result.getFailureRate() - base.getFailureRate();
+			failed = diff > errorTolerance;
+			line(result.name, "errors %", String.format("%.2f", base.getFailureRate()),
+					String.format("%.2f", result.getFailureRate()), diff, -1, failed);
+			regression |= failed;
+		}
+		for (BenchmarkResult base : baseline) {
+			if (find(results, base.name) == null) {
+				LOGGER.info(String.format("%-20s missing %s", base.name, "REGRESSION"));
+				regression = true;
+			}
+		}
+		if (regression) {
+			LOGGER.warn("Regression detected!");
+		} else {
+			LOGGER.info("No regression.");
+		}
+		return regression;
+	}
+
+	/**
+	 * Log line of comparison table.
+	 * 
+	 * @param name       name of result
+	 * @param metric     name of metric
+	 * @param baseline   baseline value
+	 * @param current    current value
+	 * @param diff       difference in percent, or percentage points for errors
+	 * @param p          p-value of statistical test. Negative, if not tested.
+	 * @param regression {@code true}, if the metric regressed
+	 */
+	private static void line(String name, String metric, String baseline, String current, double diff, double p,
+			boolean regression) {
+		LOGGER.info(String.format("%-20s %-10s %12s %12s %+8.1f%% %8s %s", name, metric, baseline, current, diff,
+				p < 0 ? "-" : String.format("%.4f", p), regression ? "REGRESSION" : ""));
+	}
+
+	/**
+	 * Find result by name.
+	 * 
+	 * @param results results
+	 * @param name    name of result
+	 * @return result, or {@code null}, if not available.
+	 */
+	private static BenchmarkResult find(List<BenchmarkResult> results, String name) {
+		for (BenchmarkResult result : results) {
+			if (result.name.equals(name)) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get change in percent.
+	 * 
+	 * @param baseline baseline value
+	 * @param current  current value
+	 * @return change in percent. {@code 0}, if baseline is {@code 0}.
+	 */
+	private static double change(long baseline, long current) {
+		if (baseline == 0) {
+			return 0;
+		}
+		return (current - baseline) * 100.0 / baseline;
+	}
+
+	/**
+	 * One-sided Mann-Whitney U test.
+	 * 
+	 * Uses the normal approximation with average ranks for ties.
+	 * 
+	 * @param lower  samples expected to be lower
+	 * @param higher samples expected to be higher
+	 * @return p-value for the hypothesis, that the lower samples are
+	 *         stochastically less than the higher samples.
+	 */
+	static double mannWhitney(long[] lower, long[] higher) {
+		int n1 = lower.length;
+		int n2 = higher.length;
+		long[] all = new long[n1 + n2];
+		System.arraycopy(lower, 0, all, 0, n1);
+		System.arraycopy(higher, 0, all, n1, n2);
+		long[] sorted = all.clone();
+		Arrays.sort(sorted);
+		double rankSum = 0;
+		for (int index = 0; index < n1; ++index) {
+			rankSum += rank(sorted, lower[index]);
+		}
+		double u = rankSum - n1 * (n1 + 1) / 2.0;
+		double mean = n1 * n2 / 2.0;
+		double sigma = Math.sqrt(n1 * n2 * (n1 + n2 + 1) / 12.0);
+		if (sigma == 0) {
+			return 1.0;
+		}
+		// continuity correction
+		double z = (u - mean + 0.5) / sigma;
+		return normal(z);
+	}
+
+	/**
+	 * Get average rank of value.
+	 * 
+	 * @param sorted sorted values
+	 * @param value  value
+	 * @return average rank, starting with {@code 1}
+	 */
+	private static double rank(long[] sorted, long value) {
+		int first = -1;
+		int last = -1;
+		for (int index = 0; index < sorted.length; ++index) {
+			if (sorted[index] == value) {
+				if (first < 0) {
+					first = index;
+				}
+				last = index;
+			}
+		}
+		return (first + last) / 2.0 + 1;
+	}
+
+	/**
+	 * Cumulative standard normal distribution.
+	 * 
+	 * Uses the approximation 7.1.26 of Abramowitz and Stegun for the error
+	 * function.
+	 * 
+	 * @param z value
+	 * @return probability
+	 */
+	private static double normal(double z) {
+		double x = Math.abs(z) / Math.sqrt(2);
+		double t = 1.0 / (1.0 + 0.3275911 * x);
+		double erf = 1.0 - (((((1.061405429 * t - 1.453152027) * t) + 1.421413741) * t - 0.284496736) * t
+				+ 0.254829592) * t * Math.exp(-x * x);
+		return z >= 0 ? (1.0 + erf) / 2.0 : (1.0 - erf) / 2.0;
+	}
+}
@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.util.Properties;
+
+/**
+ * Result of a benchmark phase.
+ */
+public class BenchmarkResult {
+
+	/**
+	 * Name of the result.
+	 */
+	public final String name;
+	/**
+	 * Time of the phase in milliseconds.
+	 */
+	public final long time;
+	/**
+	 * Number of completed requests.
+	 */
+	public final long requests;
+	/**
+	 * Number of failed requests.
+	 */
+	public final long failures;
+	/**
+	 * Number of sent payload bytes.
+	 */
+	public final long requestBytes;
+	/**
+	 * Number of received payload bytes.
+	 */
+	public final long responseBytes;
+	/**
+	 * Number of intervals with saturated client.
+	 */
+	public final long saturated;
+	/**
+	 * Average latency in microseconds.
+	 */
+	public final long average;
+	/**
+	 * 50% latency percentile in microseconds.
+	 */
+	public final long p50;
+	/**
+	 * 90% latency percentile in microseconds.
+	 */
+	public final long p90;
+	/**
+	 * 99% latency percentile in microseconds.
+	 */
+	public final long p99;
+	/**
+	 * 99.9% latency percentile in microseconds.
+	 */
+	public final long p999;
+	/**
+	 * Maximum latency in microseconds.
+	 */
+	public final long max;
+	/**
+	 * Requests per second of the intervals.
+	 */
+	public final long[] throughputSamples;
+	/**
+	 * 99% latency percentile in microseconds of the intervals.
+	 */
+	public final long[] p99Samples;
+
+	/**
+	 * Create result.
+	 * 
+	 * @param name              name of the result
+	 * @param time              time of the phase in milliseconds
+	 * @param requests          number of completed requests
+	 * @param failures          number of failed requests
+	 * @param requestBytes      number of sent payload bytes
+	 * @param responseBytes     number of received payload bytes
+	 * @param saturated         number of intervals with saturated client
+	 * @param latency           latencies of the requests
+	 * @param throughputSamples requests per second of the intervals
+	 * @param p99Samples        99% latency percentile in microseconds of the
+	 *                          intervals
+	 */
+	public BenchmarkResult(String name, long time, long requests, long failures, long requestBytes,
+			long responseBytes, long saturated, LatencyHistogram latency, long[] throughputSamples,
+			long[] p99Samples) {
+		this.name = name;
+		this.time = time;
+		this.requests = requests;
+		this.failures = failures;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.saturated = saturated;
+		this.average = latency.getAverage();
+		this.p50 = latency.getPercentile(50);
+		this.p90 = latency.getPercentile(90);
+		this.p99 = latency.getPercentile(99);
+		this.p999 = latency.getPercentile(99.9);
+		this.max = latency.getMax();
+		this.throughputSamples = throughputSamples;
+		this.p99Samples = p99Samples;
+	}
+
+	/**
+	 * Create result from properties.
+	 * 
+	 * @param name       name of the result
+	 * @param properties properties with the result
+	 * @see #store(Properties)
+	 */
+	private BenchmarkResult(String name, Properties properties) {
+		this.name = name;
+		this.time = getLong(properties, name + ".time");
+		this.requests = getLong(properties, name + ".requests");
+		this.failures = getLong(properties, name + ".failures");
+		this.requestBytes = getLong(properties, name + ".request-bytes");
+		this.responseBytes = getLong(properties, name + ".response-bytes");
+		this.saturated = getLong(properties, name + ".saturated");
+		this.average = getLong(properties, name + ".latency.avg");
+		this.p50 = getLong(properties, name + ".latency.p50");
+		this.p90 = getLong(properties, name + ".latency.p90");
+		this.p99 = getLong(properties, name + ".latency.p99");
+		this.p999 = getLong(properties, name + ".latency.p99.9");
+		this.max = getLong(properties, name + ".latency.max");
+		this.throughputSamples = getLongs(properties, name + ".samples.throughput");
+		this.p99Samples = getLongs(properties, name + ".samples.p99");
+	}
+
+	/**
+	 * Store result into properties.
+	 * 
+	 * The keys of the properties are prefixed by the name of the result.
+	 * 
+	 * @param properties properties to store the result
+	 */
+	public void store(Properties properties) {
+		properties.setProperty(name + ".time", Long.toString(time));
+		properties.setProperty(name + ".requests", Long.toString(requests));
+		properties.setProperty(name + ".failures", Long.toString(failures));
+		properties.setProperty(name + ".request-bytes", Long.toString(requestBytes));
+		properties.setProperty(name + ".response-bytes", Long.toString(responseBytes));
+		properties.setProperty(name + ".saturated", Long.toString(saturated));
+		properties.setProperty(name + ".latency.avg", Long.toString(average));
+		properties.setProperty(name + ".latency.p50", Long.toString(p50));
+		properties.setProperty(name + ".latency.p90", Long.toString(p90));
+		properties.setProperty(name + ".latency.p99", Long.toString(p99));
+		properties.setProperty(name + ".latency.p99.9", Long.toString(p999));
+		properties.setProperty(name + ".latency.max", Long.toString(max));
+		properties.setProperty(name + ".samples.throughput", toString(throughputSamples));
+		properties.setProperty(name + ".samples.p99", toString(p99Samples));
+	}
+
+	/**
+	 * Load result from properties.
+	 * 
+	 * @param name       name of the result
+	 * @param properties properties with the result
+	 * @return loaded result, or {@code null}, if the properties don't contain a
+	 *         result with that name.
+	 * @throws IllegalArgumentException if a value of the result is invalid
+	 */
+	public static BenchmarkResult load(String name, Properties properties) {
+		if (properties.getProperty(name + ".requests") == null) {
+			return null;
+		}
+		return new BenchmarkResult(name, properties);
+	}
+
+	/**
+	 * Get long value of property.
+	 * 
+	 * @param properties properties
+	 * @param key        key of property
+	 * @return long value, {@code 0}, if not available.
+	 * @throws IllegalArgumentException if the value is no number
+	 */
+	private static long getLong(Properties properties, String key) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + "=" + value + " is no number!", e);
+		}
+	}
+
+	/**
+	 * Get long values of property.
+	 * 
+	 * @param properties properties
+	 * @param key        key of property
+	 * @return long values, empty, if not available.
+	 * @throws IllegalArgumentException if a value is no number
+	 */
+	private static long[] getLongs(Properties properties, String key) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return new long[0];
+		}
+		String[] values = value.split(",");
+		long[] result = new long[values.length];
+		for (int index = 0; index < values.length; ++index) {
+			try {
+				result[index] = Long.parseLong(values[index].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(key + "=" + value + " contains no number!", e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Convert long values into comma separated string.
+	 * 
+	 * @param values long values
+	 * @return comma separated string
+	 */
+	private static String toString(long[] values) {
+		StringBuilder text = new StringBuilder();
+		for (long value : values) {
+			if (text.length() > 0) {
+				text.append(",");
+			}
+			text.append(value);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Get requests per second.
+	 * 
+	 * @return requests per second
+	 */
+	public long getRequestsPerSecond() {
+		return time == 0 ? 0 : (requests * 1000) / time;
+	}
+
+	/**
+	 * Get sent and received payload bytes per second.
+	 * 
+	 * @return bytes per second
+	 */
+	public long getBytesPerSecond() {
+		return time == 0 ? 0 : ((requestBytes + responseBytes) * 1000) / time;
+	}
+
+	/**
+	 * Get failures in percent of the requests.
+	 * 
+	 * @return failures in percent
+	 */
+	public double getFailureRate() {
+		return requests == 0 ? 0 : (failures * 100.0) / requests;
+	}
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram.
+ * 
+ * Records latencies in microseconds into log-linear buckets. Each power of two
+ * is split into 16 sub-buckets, which results in a precision of about 6%.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of bits for the linear sub-buckets.
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+	/**
+	 * Number of linear buckets for small values.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Number of sub-buckets per power of two.
+	 */
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+	/**
+	 * Number of buckets.
+	 */
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+	/**
+	 * Counters of buckets.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	/**
+	 * Number of recorded latencies.
+	 */
+	private final AtomicLong count = new AtomicLong();
+	/**
+	 * Sum of recorded latencies in microseconds.
+	 */
+	private final AtomicLong sum = new AtomicLong();
+	/**
+	 * Maximum recorded latency in microseconds.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record latency.
+	 * 
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		if (micros < 0) {
+			micros = 0;
+		}
+		buckets.incrementAndGet(index(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Transfer recorded latencies.
+	 * 
+	 * Adds the recorded latencies to the provided histogram and resets this
+	 * histogram. Concurrently recorded latencies are either transfered or kept.
+	 * 
+	 * @param histogram histogram to add the recorded latencies
+	 */
+	public void transferTo(LatencyHistogram histogram) {
+		for (int index = 0; index < BUCKETS; ++index) {
+			long value = buckets.getAndSet(index, 0);
+			if (value > 0) {
+				histogram.buckets.addAndGet(index, value);
+			}
+		}
+		histogram.count.addAndGet(count.getAndSet(0));
+		histogram.sum.addAndGet(sum.getAndSet(0));
+		histogram.updateMax(max.getAndSet(0));
+	}
+
+	/**
+	 * Add recorded latencies.
+	 * 
+	 * Adds the recorded latencies to the provided histogram and keeps the
+	 * recorded latencies of this histogram.
+	 * 
+	 * @param histogram histogram to add the recorded latencies
+	 */
+	public void addTo(LatencyHistogram histogram) {
+		for (int index = 0; index < BUCKETS; ++index) {
+			long value = buckets.get(index);
+			if (value > 0) {
+				histogram.buckets.addAndGet(index, value);
+			}
+		}
+		histogram.count.addAndGet(count.get());
+		histogram.sum.addAndGet(sum.get());
+		histogram.updateMax(max.get());
+	}
+
+	/**
+	 * Reset histogram.
+	 */
+	public void reset() {
+		for (int index = 0; index < BUCKETS; ++index) {
+			buckets.set(index, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Get number of recorded latencies.
+	 * 
+	 * @return number of recorded latencies
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Get average latency.
+	 * 
+	 * @return average latency in microseconds. {@code 0}, if no latency is
+	 *         recorded.
+	 */
+	public long getAverage() {
+		long count = this.count.get();
+		return count == 0 ? 0 : sum.get() / count;
+	}
+
+	/**
+	 * Get maximum latency.
+	 * 
+	 * @return maximum latency in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get latency percentile.
+	 * 
+	 * @param percentile percentile. Range {@code [0..100]}.
+	 * @return highest latency of the bucket, which contains the percentile, in
+	 *         microseconds, but not above the maximum latency. {@code 0}, if no
+	 *         latency is recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int index = 0; index < BUCKETS; ++index) {
+			total += buckets.get(index);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long limit = (long) Math.ceil(total * percentile / 100.0);
+		if (limit < 1) {
+			limit = 1;
+		}
+		long counter = 0;
+		for (int index = 0; index < BUCKETS; ++index) {
+			counter += buckets.get(index);
+			if (counter >= limit) {
+				return Math.min(highest(index), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Update maximum latency.
+	 * 
+	 * @param micros latency in microseconds
+	 */
+	private void updateMax(long micros) {
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Get bucket index.
+	 * 
+	 * @param micros latency in microseconds
+	 * @return index of bucket
+	 */
+	static int index(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+		int top = (int) (micros >>> shift);
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (top - HALF_SUB_BUCKETS);
+	}
+
+	/**
+	 * Get highest latency of bucket.
+	 * 
+	 * @param index index of bucket
+	 * @return highest latency of bucket in microseconds
+	 */
+	static long highest(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		long top = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * Format latency in milliseconds.
+	 * 
+	 * @param micros latency in microseconds
+	 * @return formatted latency
+	 */
+	public static String format(long micros) {
+		return String.format("%d.%d", micros / 1000, (micros % 1000) / 100);
+	}
+}
@@ -0,0 +1,401 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded object cache.
+ * 
+ * The size of the cache is bounded by the bytes of the cached objects. Supports
+ * {@link Eviction#LRU} and {@link Eviction#TINY_LFU} eviction. The objects are
+ * stored either on the heap or off-heap in direct buffers.
+ */
+public class ObjectCache {
+
+	/**
+	 * Eviction policy.
+	 */
+	public enum Eviction {
+		/**
+		 * Evict least recently used object.
+		 */
+		LRU,
+		/**
+		 * W-TinyLFU. Objects enter a small LRU window. Objects evicted from the
+		 * window are only admitted to the main LRU, if they are accessed more
+		 * frequently than the main LRU's victim.
+		 */
+		TINY_LFU
+	}
+
+	/**
+	 * Percentage of the bytes used for the window of {@link Eviction#TINY_LFU}.
+	 */
+	private static final int WINDOW_PERCENT = 1;
+
+	/**
+	 * Eviction policy.
+	 */
+	private final Eviction eviction;
+	/**
+	 * Store objects off-heap.
+	 */
+	private final boolean offHeap;
+	/**
+	 * Time to live in nanoseconds.
+	 */
+	private final long ttlNanos;
+	/**
+	 * Maximum bytes of the window.
+	 */
+	private final long maxWindowBytes;
+	/**
+	 * Maximum bytes of the main LRU.
+	 */
+	private final long maxMainBytes;
+	/**
+	 * Window LRU. Only used for {@link Eviction#TINY_LFU}.
+	 */
+	private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Main LRU.
+	 */
+	private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * Access frequencies. Only used for {@link Eviction#TINY_LFU}.
+	 */
+	private final FrequencySketch sketch;
+	/**
+	 * Bytes of objects in window.
+	 */
+	private long windowBytes;
+	/**
+	 * Bytes of objects in main LRU.
+	 */
+	private long mainBytes;
+
+	/**
+	 * Create cache.
+	 * 
+	 * @param maxBytes maximum bytes of the cached objects
+	 * @param eviction eviction policy
+	 * @param offHeap  {@code true} to store the objects in direct buffers
+	 * @param ttl      time to live of objects before revalidation
+	 * @param unit     time unit of ttl
+	 */
+	public ObjectCache(long maxBytes, Eviction eviction, boolean offHeap, long ttl, TimeUnit unit) {
+		this.eviction = eviction;
+		this.offHeap = offHeap;
+		this.ttlNanos = unit.toNanos(ttl);
+		if (eviction == Eviction.TINY_LFU) {
+			this.maxWindowBytes = Math.max(maxBytes * WINDOW_PERCENT / 100, 1);
+			this.maxMainBytes = maxBytes - maxWindowBytes;
+			this.sketch = new FrequencySketch();
+		} else {
+			this.maxWindowBytes = 0;
+			this.maxMainBytes = maxBytes;
+			this.sketch = null;
+		}
+	}
+
+	/**
+	 * Get cached object.
+	 * 
+	 * @param key key of object
+	 * @return cache entry, or {@code null}, if not cached.
+	 */
+	public synchronized Entry get(String key) {
+		if (sketch != null) {
+			sketch.increment(key);
+		}
+		Entry entry = main.get(key);
+		if (entry == null && eviction == Eviction.TINY_LFU) {
+			entry = window.get(key);
+		}
+		return entry;
+	}
+
+	/**
+	 * Put object into cache.
+	 * 
+	 * Objects larger than the main LRU are not cached.
+	 * 
+	 * @param key  key of object
+	 * @param eTag etag of object
+	 * @param data data of object
+	 */
+	public void put(String key, String eTag, byte[] data) {
+		Entry entry = new Entry(eTag, data, offHeap, System.nanoTime() + ttlNanos);
+		synchronized (this) {
+			remove(key);
+			if (eviction == Eviction.TINY_LFU) {
+				// the window passes all objects to the main LRU
+				if (entry.size > maxMainBytes) {
+					return;
+				}
+				window.put(key, entry);
+				windowBytes += entry.size;
+				evictWindow();
+			} else {
+				if (entry.size > maxMainBytes) {
+					return;
+				}
+				main.put(key, entry);
+				mainBytes += entry.size;
+				evictMain(null, 0);
+			}
+		}
+	}
+
+	/**
+	 * Invalidate cached object.
+	 * 
+	 * Used, when the object is written or deleted.
+	 * 
+	 * @param key key of object
+	 */
+	public synchronized void invalidate(String key) {
+		remove(key);
+	}
+
+	/**
+	 * Refresh cached object after successful revalidation.
+	 * 
+	 * @param entry cache entry
+	 */
+	public void refresh(Entry entry) {
+		entry.expires = System.nanoTime() + ttlNanos;
+	}
+
+	/**
+	 * Get number of bytes of the cached objects.
+	 * 
+	 * @return number of bytes
+	 */
+	public synchronized long getBytes() {
+		return windowBytes + mainBytes;
+	}
+
+	/**
+	 * Remove object from cache.
+	 * 
+	 * @param key key of object
+	 */
+	private void remove(String key) {
+		Entry entry = main.remove(key);
+		if (entry != null) {
+			mainBytes -= entry.size;
+		}
+		entry = window.remove(key);
+		if (entry != null) {
+			windowBytes -= entry.size;
+		}
+	}
+
+	/**
+	 * Evict objects from window.
+	 * 
+	 * Move the evicted objects as candidates into the main LRU.
+	 */
+	private void evictWindow() {
+		Iterator<Map.Entry<String, Entry>> iterator = window.entrySet().iterator();
+		while (windowBytes > maxWindowBytes && iterator.hasNext()) {
+			Map.Entry<String, Entry> candidate = iterator.next();
+			iterator.remove();
+			windowBytes -= candidate.getValue().size;
+			main.put(candidate.getKey(), candidate.getValue());
+			mainBytes += candidate.getValue().size;
+			evictMain(candidate.getKey(), sketch.frequency(candidate.getKey()));
+		}
+	}
+
+	/**
+	 * Evict objects from main LRU.
+	 * 
+	 * @param candidate key of candidate for {@link Eviction#TINY_LFU}.
+	 *                  {@code null} for {@link Eviction#LRU}.
+	 * @param frequency access frequency of candidate
+	 */
+	private void evictMain(String candidate, int frequency) {
+		Iterator<Map.Entry<String, Entry>> iterator = main.entrySet().iterator();
+		while (mainBytes > maxMainBytes && iterator.hasNext()) {
+			Map.Entry<String, Entry> victim = iterator.next();
+			if (candidate != null && !candidate.equals(victim.getKey())
+					&& frequency <= sketch.frequency(victim.getKey())) {
+				// candidate is not admitted
+				Entry entry = main.remove(candidate);
+				mainBytes -= entry.size;
+				return;
+			}
+			iterator.remove();
+			mainBytes -= victim.getValue().size;
+		}
+	}
+
+	/**
+	 * Cache entry.
+	 */
+	public static class Entry {
+
+		/**
+		 * Etag of object.
+		 */
+		public final String eTag;
+		/**
+		 * Size of object in bytes.
+		 */
+		public final int size;
+		/**
+		 * Data on heap. {@code null}, if stored off-heap.
+		 */
+		private final byte[] data;
+		/**
+		 * Data off-heap. {@code null}, if stored on heap.
+		 */
+		private final ByteBuffer buffer;
+		/**
+		 * Nano time of expiration.
+		 */
+		private volatile long expires;
+
+		private Entry(String eTag, byte[] data, boolean offHeap, long expires) {
+			this.eTag = eTag;
+			this.size = data.length;
+			if (offHeap) {
+				this.buffer = ByteBuffer.allocateDirect(data.length);
+				this.buffer.put(data);
+				this.buffer.flip();
+				this.data = null;
+			} else {
+				this.buffer = null;
+				this.data = data;
+			}
+			this.expires = expires;
+		}
+
+		/**
+		 * Check, if entry is expired and must be revalidated.
+		 * 
+		 * @param now current nano time
+		 * @return {@code true}, if expired, {@code false}, otherwise.
+		 */
+		public boolean isExpired(long now) {
+			return (now - expires) >= 0;
+		}
+
+		/**
+		 * Read data of object.
+		 * 
+		 * Data stored off-heap is copied.
+		 * 
+		 * @return data of object
+		 */
+		public byte[] read() {
+			if (data != null) {
+				return data;
+			}
+			byte[] copy = new byte[size];
+			buffer.duplicate().get(copy);
+			return copy;
+		}
+	}
+
+	/**
+	 * Count-min sketch with 4 rows for access frequencies.
+	 * 
+	 * The counters are halved after a sample period in order to age the
+	 * frequencies. Not thread-safe, the cache synchronizes access.
+	 */
+	private static class FrequencySketch {
+
+		/**
+		 * Number of counters per row.
+		 */
+		private static final int WIDTH = 1 << 14;
+		/**
+		 * Number of rows.
+		 */
+		private static final int ROWS = 4;
+		/**
+		 * Seeds for the row hashes.
+		 */
+		private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+		/**
+		 * Sample period in increments.
+		 */
+		private static final int SAMPLE = WIDTH * 10;
+
+		/**
+		 * Counters.
+		 */
+		private final int[][] counters = new int[ROWS][WIDTH];
+		/**
+		 * Increments since last aging.
+		 */
+		private int increments;
+
+		/**
+		 * Increment frequency of key.
+		 * 
+		 * @param key key
+		 */
+		private void increment(String key) {
+			int hash = key.hashCode();
+			for (int row = 0; row < ROWS; ++row) {
+				++counters[row][index(hash, row)];
+			}
+			if (++increments == SAMPLE) {
+				increments = 0;
+				for (int row = 0; row < ROWS; ++row) {
+					for (int index = 0; index < WIDTH; ++index) {
+						counters[row][index] >>>= 1;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Get frequency of key.
+		 * 
+		 * @param key key
+		 * @return estimated frequency
+		 */
+		private int frequency(String key) {
+			int hash = key.hashCode();
+			int frequency = Integer.MAX_VALUE;
+			for (int row = 0; row < ROWS; ++row) {
+				frequency = Math.min(frequency, counters[row][index(hash, row)]);
+			}
+			return frequency;
+		}
+
+		/**
+		 * Get counter index.
+		 * 
+		 * @param hash hash of key
+		 * @param row  row of counters
+		 * @return index of counter
+		 */
+		private static int index(int hash, int row) {
+			int h = hash * SEEDS[row];
+			h ^= h >>> 16;
+			return h & (WIDTH - 1);
+		}
+	}
+}
@@ -0,0 +1,587 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.http.SdkHttpResponse;
+
+/**
+ * Capture of slow and failed requests.
+ * 
+ * Records the slowest requests into a pre-allocated top list and the failed
+ * requests into a pre-allocated lock-free ring buffer without logging. Only
+ * requests slower than a threshold are candidates for the top list. The
+ * threshold is usually the 99% latency percentile of the previous interval,
+ * without threshold all requests are candidates. With each {@link #dump(long)}
+ * the slowest and the latest failed requests since the last dump are logged.
+ * 
+ * The phases of a request are measured by the {@link Interceptor} using a
+ * {@link Timing} attached to the request. The SDK doesn't expose the
+ * connection, therefore the request id of the S3 provider is recorded instead.
+ */
+public class RequestCapture {
+
+	/**
+	 * Logger.
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(RequestCapture.class);
+
+	/**
+	 * Execution attribute for the timing of a request.
+	 */
+	public static final ExecutionAttribute<Timing> TIMING = new ExecutionAttribute<>("S3BenchmarkTiming");
+
+	/**
+	 * Number of slowest and failed requests to dump.
+	 */
+	private final int size;
+	/**
+	 * Top list of slowest requests.
+	 */
+	private final Top slow;
+	/**
+	 * Ring buffer for failed requests.
+	 */
+	private final Ring failed;
+	/**
+	 * Threshold in nanoseconds for slow requests. {@code 0}, if no threshold
+	 * is available.
+	 */
+	private volatile long thresholdNanos;
+
+	/**
+	 * Create capture.
+	 * 
+	 * The top list is sized to the number of requests to dump, the ring buffer
+	 * to 16 times that number, but at least 1024 slots.
+	 * 
+	 * @param size number of slowest and failed requests to dump
+	 */
+	public RequestCapture(int size) {
+		this.size = size;
+		int capacity = Integer.highestOneBit(Math.max(size * 16, 1024) - 1) << 1;
+		this.slow = new Top(size);
+		this.failed = new Ring(capacity);
+	}
+
+	/**
+	 * Set threshold for slow requests.
+	 * 
+	 * @param time threshold
+	 * @param unit time unit of the threshold
+	 */
+	public void threshold(long time, TimeUnit unit) {
+		thresholdNanos = unit.toNanos(time);
+	}
+
+	/**
+	 * Reset threshold for slow requests.
+	 * 
+	 * The slowest requests are captured without threshold until a new one is
+	 * set.
+	 */
+	public void reset() {
+		thresholdNanos = 0;
+	}
+
+	/**
+	 * Record completed request.
+	 * 
+	 * Doesn't block nor log. If the top list or the slot of the ring buffer is
+	 * still written by an other thread, the request is dropped.
+	 * 
+	 * @param op        operation
+	 * @param key       key or prefix of the request
+	 * @param sent      sent payload bytes
+	 * @param timing    timing of the request
+	 * @param end       nano time of completion
+	 * @param exception exception of the request. {@code null}, if none.
+	 */
+	public void record(String op, String key, long sent, Timing timing, long end, Throwable exception) {
+		int status = timing.status;
+		// not modified is reported as exception
+		boolean failure = status >= 400 || (exception != null && status != 304) || timing.error != null;
+		long latency = end - timing.start;
+		if (failure) {
+			failed.add(op, key, sent, timing, end, exception);
+		}
+		if (latency >= thresholdNanos) {
+			slow.add(latency, op, key, sent, timing, end, exception);
+		}
+	}
+
+	/**
+	 * Dump the slowest and the latest failed requests since the last dump.
+	 * 
+	 * @param seconds seconds since start of the benchmark
+	 */
+	public void dump(long seconds) {
+		long candidates = slow.candidates.getAndSet(0);
+		List<Record> records = slow.drain();
+		long dropped = slow.dropped.getAndSet(0);
+		if (!records.isEmpty() || dropped > 0) {
+			LOGGER.info("{} slowest {} of {} requests above {} ms, {} dropped:", seconds, records.size(), candidates,
+					LatencyHistogram.format(TimeUnit.NANOSECONDS.toMicros(thresholdNanos)), dropped);
+			for (Record record : records) {
+				LOGGER.info("  {}", record);
+			}
+		}
+		records = failed.drain();
+		dropped = failed.dropped.getAndSet(0);
+		if (!records.isEmpty() || dropped > 0) {
+			LOGGER.info("{} latest {} of {} failed requests, {} dropped:", seconds, Math.min(size, records.size()),
+					records.size(), dropped);
+			for (int index = Math.max(0, records.size() - size); index < records.size(); ++index) {
+				LOGGER.info("  {}", records.get(index));
+			}
+		}
+	}
+
+	/**
+	 * Timing of a request.
+	 * 
+	 * Attached to the request with {@link RequestCapture#TIMING} and updated by
+	 * the {@link Interceptor}. Hedged requests share the timing, the last one
+	 * received wins.
+	 */
+	public static class Timing {
+
+		/**
+		 * Nano time of start.
+		 */
+		private final long start;
+		/**
+		 * Nano time before transmission. {@code 0}, if not transmitted.
+		 */
+		private volatile long transmit;
+		/**
+		 * Nano time after transmission, when the response headers are
+		 * received. {@code 0}, if not received.
+		 */
+		private volatile long receive;
+		/**
+		 * Http status. {@code 0}, if not received.
+		 */
+		private volatile int status;
+		/**
+		 * Received payload bytes from the Content-Length header.
+		 */
+		private volatile long received;
+		/**
+		 * Request id of the S3 provider. {@code null}, if not received.
+		 */
+		private volatile String requestId;
+		/**
+		 * Error of a successful response. {@code null}, if none.
+		 */
+		private volatile String error;
+
+		/**
+		 * Create timing.
+		 * 
+		 * @param start nano time of start
+		 */
+		public Timing(long start) {
+			this.start = start;
+		}
+
+		/**
+		 * Mark a successful response as failed.
+		 * 
+		 * Used for failures reported in the payload, e.g. keys not deleted by
+		 * a DeleteObjects request.
+		 * 
+		 * @param error description of the error
+		 */
+		public void fail(String error) {
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Interceptor to update the {@link Timing} of the requests.
+	 */
+	public static class Interceptor implements ExecutionInterceptor {
+
+		@Override
+		public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+			Timing timing = executionAttributes.getAttribute(TIMING);
+			if (timing != null) {
+				timing.transmit = System.nanoTime();
+			}
+		}
+
+		@Override
+		public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+			Timing timing = executionAttributes.getAttribute(TIMING);
+			if (timing != null) {
+				timing.receive = System.nanoTime();
+				update(timing, context.httpResponse());
+			}
+		}
+
+		@Override
+		public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+			Timing timing = executionAttributes.getAttribute(TIMING);
+			if (timing != null) {
+				update(timing, context.httpResponse().orElse(null));
+			}
+		}
+
+		/**
+		 * Update timing with http response.
+		 * 
+		 * @param timing   timing to update
+		 * @param response http response. May be {@code null}.
+		 */
+		private static void update(Timing timing, SdkHttpResponse response) {
+			if (response != null) {
+				timing.status = response.statusCode();
+				timing.requestId = response.firstMatchingHeader("x-amz-request-id").orElse(null);
+				String length = response.firstMatchingHeader("Content-Length").orElse(null);
+				if (length != null) {
+					try {
+						timing.received = Long.parseLong(length.trim());
+					} catch (NumberFormatException e) {
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Captured request.
+	 */
+	private static class Record {
+
+		private final String op;
+		private final String key;
+		private final int status;
+		private final long sent;
+		private final long received;
+		private final long startMillis;
+		private final long latency;
+		private final long prepare;
+		private final long transmit;
+		private final long receive;
+		private final String requestId;
+		private final String error;
+
+		private Record(Slot slot) {
+			this.op = slot.op;
+			this.key = slot.key;
+			this.status = slot.status;
+			this.sent = slot.sent;
+			this.received = slot.received;
+			this.startMillis = slot.startMillis;
+			this.latency = slot.latency;
+			this.prepare = slot.prepare;
+			this.transmit = slot.transmit;
+			this.receive = slot.receive;
+			this.requestId = slot.requestId;
+			this.error = slot.error;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder line = new StringBuilder();
+			line.append(Instant.ofEpochMilli(startMillis)).append(" ");
+			line.append(op).append(" ").append(key).append(" ");
+			line.append(status == 0 ? "-" : Integer.toString(status));
+			if (error != null) {
+				line.append(" ").append(error);
+			}
+			line.append(", ").append(sent).append("/").append(received).append(" bytes, ");
+			line.append(format(latency)).append(" ms (");
+			line.append(format(prepare)).append("/").append(format(transmit)).append("/").append(format(receive));
+			line.append(" ms prepare/transmit/receive)");
+			if (requestId != null) {
+				line.append(", id ").append(requestId);
+			}
+			return line.toString();
+		}
+
+		/**
+		 * Format phase time.
+		 * 
+		 * @param nanos phase time in nanoseconds. Negative, if not available.
+		 * @return formatted milliseconds, or "-", if not available.
+		 */
+		private static String format(long nanos) {
+			return nanos < 0 ? "-" : LatencyHistogram.format(TimeUnit.NANOSECONDS.toMicros(nanos));
+		}
+	}
+
+	/**
+	 * Slot of top list or ring buffer.
+	 * 
+	 * For the ring buffer the version is odd, while the slot is written.
+	 */
+	private static class Slot {
+
+		private final AtomicLong version = new AtomicLong();
+		private volatile long sequence = -1;
+		private volatile String op;
+		private volatile String key;
+		private volatile int status;
+		private volatile long sent;
+		private volatile long received;
+		private volatile long startMillis;
+		private volatile long latency;
+		private volatile long prepare;
+		private volatile long transmit;
+		private volatile long receive;
+		private volatile String requestId;
+		private volatile String error;
+
+		/**
+		 * Set request.
+		 * 
+		 * @param op        operation
+		 * @param key       key or prefix of the request
+		 * @param sent      sent payload bytes
+		 * @param timing    timing of the request
+		 * @param end       nano time of completion
+		 * @param exception exception of the request. {@code null}, if none.
+		 */
+		private void set(String op, String key, long sent, Timing timing, long end, Throwable exception) {
+			long transmit = timing.transmit;
+			long receive = timing.receive;
+			long latency = end - timing.start;
+			this.op = op;
+			this.key = key;
+			this.status = timing.status;
+			this.sent = sent;
+			this.received = timing.received;
+			this.startMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(latency);
+			this.latency = latency;
+			this.prepare = transmit == 0 ? -1 : transmit - timing.start;
+			this.transmit = transmit == 0 || receive == 0 ? -1 : receive - transmit;
+			this.receive = receive == 0 ? -1 : end - receive;
+			this.requestId = timing.requestId;
+			// not modified is reported as exception
+			if (timing.error != null) {
+				this.error = timing.error;
+			} else {
+				this.error = exception == null || timing.status == 304 ? null : exception.getClass().getSimpleName();
+			}
+		}
+	}
+
+	/**
+	 * Top list of slowest requests with pre-allocated slots.
+	 * 
+	 * Requests not slower than the fastest request of a full list are rejected
+	 * without locking. Others are only added, if the lock is available.
+	 */
+	private static class Top {
+
+		/**
+		 * Slots.
+		 */
+		private final Slot[] slots;
+		/**
+		 * Lock for slots.
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+		/**
+		 * Number of requests above the threshold.
+		 */
+		private final AtomicLong candidates = new AtomicLong();
+		/**
+		 * Number of records dropped, because the list was written
+		 * concurrently.
+		 */
+		private final AtomicLong dropped = new AtomicLong();
+		/**
+		 * Number of used slots.
+		 */
+		private int used;
+		/**
+		 * Index of slot with the fastest request.
+		 */
+		private int fastest;
+		/**
+		 * Latency of the fastest request of the full list. {@code -1}, if the
+		 * list is not full.
+		 */
+		private volatile long floor = -1;
+
+		private Top(int size) {
+			this.slots = new Slot[size];
+			for (int index = 0; index < size; ++index) {
+				slots[index] = new Slot();
+			}
+		}
+
+		/**
+		 * Add record, if slower than the fastest one of the full list.
+		 * 
+		 * @param latency   latency of the request
+		 * @param op        operation
+		 * @param key       key or prefix of the request
+		 * @param sent      sent payload bytes
+		 * @param timing    timing of the request
+		 * @param end       nano time of completion
+		 * @param exception exception of the request. {@code null}, if none.
+		 */
+		private void add(long latency, String op, String key, long sent, Timing timing, long end,
+				Throwable exception) {
+			candidates.incrementAndGet();
+			if (latency <= floor) {
+				return;
+			}
+			if (!lock.tryLock()) {
+				dropped.incrementAndGet();
+				return;
+			}
+			try {
+				if (used < slots.length) {
+					slots[used++].set(op, key, sent, timing, end, exception);
+				} else if (latency > slots[fastest].latency) {
+					slots[fastest].set(op, key, sent, timing, end, exception);
+				} else {
+					return;
+				}
+				if (used == slots.length) {
+					for (int index = 0; index < used; ++index) {
+						if (slots[index].latency < slots[fastest].latency) {
+							fastest = index;
+						}
+					}
+					floor = slots[fastest].latency;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Drain records added since last drain.
+		 * 
+		 * @return list of records, slowest first
+		 */
+		private List<Record> drain() {
+			List<Record> records = new ArrayList<>();
+			lock.lock();
+			try {
+				for (int index = 0; index < used; ++index) {
+					records.add(new Record(slots[index]));
+				}
+				used = 0;
+				fastest = 0;
+				floor = -1;
+			} finally {
+				lock.unlock();
+			}
+			Collections.sort(records, (a, b) -> Long.compare(b.latency, a.latency));
+			return records;
+		}
+	}
+
+	/**
+	 * Lock-free ring buffer with pre-allocated slots.
+	 */
+	private static class Ring {
+
+		/**
+		 * Slots. The length is a power of two.
+		 */
+		private final Slot[] slots;
+		/**
+		 * Sequence of next record.
+		 */
+		private final AtomicLong sequence = new AtomicLong();
+		/**
+		 * Number of records dropped, because the slot was written concurrently
+		 * or overwritten before drained.
+		 */
+		private final AtomicLong dropped = new AtomicLong();
+		/**
+		 * Sequence of first record not drained.
+		 */
+		private long drained;
+
+		private Ring(int capacity) {
+			this.slots = new Slot[capacity];
+			for (int index = 0; index < capacity; ++index) {
+				slots[index] = new Slot();
+			}
+		}
+
+		/**
+		 * Add record.
+		 * 
+		 * @param op        operation
+		 * @param key       key or prefix of the request
+		 * @param sent      sent payload bytes
+		 * @param timing    timing of the request
+		 * @param end       nano time of completion
+		 * @param exception exception of the request. {@code null}, if none.
+		 */
+		private void add(String op, String key, long sent, Timing timing, long end, Throwable exception) {
+			long sequence = this.sequence.getAndIncrement();
+			Slot slot = slots[(int) (sequence & (slots.length - 1))];
+			long version = slot.version.get();
+			if ((version & 1) != 0 || !slot.version.compareAndSet(version, version + 1)) {
+				dropped.incrementAndGet();
+				return;
+			}
+			slot.set(op, key, sent, timing, end, exception);
+			slot.sequence = sequence;
+			slot.version.set(version + 2);
+		}
+
+		/**
+		 * Drain records added since last drain.
+		 * 
+		 * Records overwritten before are counted as dropped, records still written
+		 * are skipped.
+		 * 
+		 * @return list of records in order of their sequence
+		 */
+		private synchronized List<Record> drain() {
+			long last = sequence.get();
+			long first = Math.max(drained, last - slots.length);
+			List<Record> records = new ArrayList<>();
+			for (long next = first; next < last; ++next) {
+				Slot slot = slots[(int) (next & (slots.length - 1))];
+				long version = slot.version.get();
+				if ((version & 1) == 0 && slot.sequence == next) {
+					Record record = new Record(slot);
+					if (slot.version.get() == version) {
+						records.add(record);
+					}
+				}
+			}
+			dropped.addAndGet(first - drained);
+			drained = last;
+			return records;
+		}
+	}
+}
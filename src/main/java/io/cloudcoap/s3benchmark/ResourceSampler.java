@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Client side resource sampler.
+ * 
+ * Samples process cpu, cpu of the netty event loop threads and the scheduler
+ * threads, allocation rate and gc time using the platform MXBeans. The
+ * scheduling lag of the event loops and the scheduler is measured with
+ * periodic probes.
+ */
+public class ResourceSampler {
+
+	/**
+	 * Thread name prefix of the netty event loop threads.
+	 */
+	public static final String EVENT_LOOP_THREAD_PREFIX = "s3-event-loop";
+	/**
+	 * Thread name prefix of the scheduler threads.
+	 */
+	public static final String SCHEDULER_THREAD_PREFIX = "s3-scheduler";
+	/**
+	 * Cpu usage in percent, which indicates a saturated client.
+	 */
+	private static final int CPU_SATURATION_PERCENT = 90;
+	/**
+	 * Gc time in percent of the interval, which indicates a saturated client.
+	 */
+	private static final int GC_SATURATION_PERCENT = 10;
+	/**
+	 * Scheduling lag in milliseconds, which indicates a saturated client.
+	 */
+	private static final long LAG_SATURATION_MILLIS = 100;
+	/**
+	 * Interval of the lag probes in milliseconds.
+	 */
+	private static final long PROBE_INTERVAL_MILLIS = 100;
+
+	/**
+	 * Operating system MXBean with process cpu time.
+	 */
+	private final com.sun.management.OperatingSystemMXBean os;
+	/**
+	 * Thread MXBean with allocated bytes.
+	 */
+	private final com.sun.management.ThreadMXBean threads;
+	/**
+	 * Number of available processors.
+	 */
+	private final int processors;
+	/**
+	 * Netty event loops.
+	 */
+	private final EventLoopGroup eventLoops;
+	/**
+	 * Scheduler to execute the probes.
+	 */
+	private final ScheduledExecutorService scheduler;
+	/**
+	 * Maximum lag of the event loops in nanoseconds.
+	 */
+	private final AtomicLong eventLoopLag = new AtomicLong();
+	/**
+	 * Maximum lag of the scheduler in nanoseconds.
+	 */
+	private final AtomicLong schedulerLag = new AtomicLong();
+	/**
+	 * Nano time of last probe.
+	 */
+	private volatile long lastProbe;
+	/**
+	 * Probe job.
+	 */
+	private ScheduledFuture<?> probe;
+
+	/**
+	 * Nano time of last sample.
+	 */
+	private long lastSample;
+	/**
+	 * Process cpu time of last sample in nanoseconds.
+	 */
+	private long lastProcessCpu;
+	/**
+	 * Gc time of last sample in milliseconds.
+	 */
+	private long lastGcTime;
+	/**
+	 * Allocated bytes of last sample.
+	 */
+	private long lastAllocated;
+	/**
+	 * Thread ids of last sample.
+	 */
+	private long[] lastThreadIds = new long[0];
+	/**
+	 * Cpu times of threads of last sample in nanoseconds.
+	 */
+	private long[] lastThreadCpu = new long[0];
+
+	/**
+	 * Create sampler.
+	 * 
+	 * @param eventLoops netty event loops
+	 * @param scheduler  scheduler to execute the probes
+	 */
+	public ResourceSampler(EventLoopGroup eventLoops, ScheduledExecutorService scheduler) {
+		this.os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		this.processors = Runtime.getRuntime().availableProcessors();
+		this.eventLoops = eventLoops;
+		this.scheduler = scheduler;
+		if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		if (threads.isThreadAllocatedMemorySupported() && !threads.isThreadAllocatedMemoryEnabled()) {
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	/**
+	 * Start sampler.
+	 * 
+	 * Starts the lag probes and takes the initial sample.
+	 */
+	public synchronized void start() {
+		sample();
+		lastProbe = System.nanoTime();
+		probe = scheduler.scheduleAtFixedRate(() -> probe(), PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop sampler.
+	 */
+	public synchronized void stop() {
+		if (probe != null) {
+			probe.cancel(false);
+			probe = null;
+		}
+	}
+
+	/**
+	 * Probe lag of scheduler and event loops.
+	 */
+	private void probe() {
+		final long now = System.nanoTime();
+		updateMax(schedulerLag, now - lastProbe - TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MILLIS));
+		lastProbe = now;
+		for (EventExecutor eventLoop : eventLoops) {
+			eventLoop.execute(() -> updateMax(eventLoopLag, System.nanoTime() - now));
+		}
+	}
+
+	/**
+	 * Sample the resources since the last sample.
+	 * 
+	 * @return sample
+	 */
+	public synchronized Sample sample() {
+		long now = System.nanoTime();
+		long interval = Math.max(now - lastSample, 1);
+		long processCpu = os.getProcessCpuTime();
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(gc.getCollectionTime(), 0);
+		}
+		long[] ids = threads.getAllThreadIds();
+		long[] cpu = threads.getThreadCpuTime(ids);
+		long[] allocated = threads.getThreadAllocatedBytes(ids);
+		ThreadInfo[] infos = threads.getThreadInfo(ids);
+		long allocatedSum = 0;
+		for (long bytes : allocated) {
+			if (bytes > 0) {
+				allocatedSum += bytes;
+			}
+		}
+		int eventLoopThreads = 0;
+		long eventLoopCpuMax = 0;
+		long eventLoopCpuSum = 0;
+		long schedulerCpuSum = 0;
+		for (int index = 0; index < ids.length; ++index) {
+			if (infos[index] == null || cpu[index] < 0) {
+				continue;
+			}
+			String name = infos[index].getThreadName();
+			boolean eventLoop = name.startsWith(EVENT_LOOP_THREAD_PREFIX);
+			if (eventLoop || name.startsWith(SCHEDULER_THREAD_PREFIX)) {
+				long delta = cpu[index] - lastCpu(ids[index]);
+				if (eventLoop) {
+					++eventLoopThreads;
+					eventLoopCpuSum += delta;
+					eventLoopCpuMax = Math.max(eventLoopCpuMax, delta);
+				} else {
+					schedulerCpuSum += delta;
+				}
+			}
+		}
+		Sample sample = new Sample(interval, (processCpu - lastProcessCpu) * 100 / (interval * processors),
+				eventLoopCpuMax * 100 / interval,
+				eventLoopThreads == 0 ? 0 : eventLoopCpuSum * 100 / (interval * eventLoopThreads),
+				schedulerCpuSum * 100 / interval,
+				Math.max(allocatedSum - lastAllocated, 0) * TimeUnit.SECONDS.toNanos(1) / interval,
+				gcTime - lastGcTime, eventLoopLag.getAndSet(0), schedulerLag.getAndSet(0));
+		lastSample = now;
+		lastProcessCpu = processCpu;
+		lastGcTime = gcTime;
+		lastAllocated = allocatedSum;
+		lastThreadIds = ids;
+		lastThreadCpu = cpu;
+		return sample;
+	}
+
+	/**
+	 * Get cpu time of thread of last sample.
+	 * 
+	 * @param id thread id
+	 * @return cpu time of last sample in nanoseconds, {@code 0}, if the thread
+	 *         was not sampled.
+	 */
+	private long lastCpu(long id) {
+		for (int index = 0; index < lastThreadIds.length; ++index) {
+			if (lastThreadIds[index] == id) {
+				return Math.max(lastThreadCpu[index], 0);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Update maximum.
+	 * 
+	 * @param max   maximum
+	 * @param value value
+	 */
+	private static void updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Resource sample.
+	 */
+	public static class Sample {
+
+		/**
+		 * Interval of sample in nanoseconds.
+		 */
+		public final long interval;
+		/**
+		 * Process cpu in percent of all processors.
+		 */
+		public final long processCpu;
+		/**
+		 * Cpu of busiest event loop thread in percent.
+		 */
+		public final long eventLoopCpuMax;
+		/**
+		 * Average cpu of event loop threads in percent.
+		 */
+		public final long eventLoopCpuAverage;
+		/**
+		 * Cpu of scheduler threads in percent of one processor.
+		 */
+		public final long schedulerCpu;
+		/**
+		 * Allocation rate in bytes per second.
+		 */
+		public final long allocationRate;
+		/**
+		 * Gc time in milliseconds.
+		 */
+		public final long gcTime;
+		/**
+		 * Maximum lag of the event loops in nanoseconds.
+		 */
+		public final long eventLoopLag;
+		/**
+		 * Maximum lag of the scheduler in nanoseconds.
+		 */
+		public final long schedulerLag;
+
+		private Sample(long interval, long processCpu, long eventLoopCpuMax, long eventLoopCpuAverage,
+				long schedulerCpu, long allocationRate, long gcTime, long eventLoopLag, long schedulerLag) {
+			this.interval = interval;
+			this.processCpu = processCpu;
+			this.eventLoopCpuMax = eventLoopCpuMax;
+			this.eventLoopCpuAverage = eventLoopCpuAverage;
+			this.schedulerCpu = schedulerCpu;
+			this.allocationRate = allocationRate;
+			this.gcTime = gcTime;
+			this.eventLoopLag = eventLoopLag;
+			this.schedulerLag = schedulerLag;
+		}
+
+		/**
+		 * Get reasons for a saturated client.
+		 * 
+		 * @return list of reasons. Empty, if the client is not saturated.
+		 */
+		public List<String> getSaturation() {
+			List<String> reasons = new ArrayList<>();
+			if (processCpu >= CPU_SATURATION_PERCENT) {
+				reasons.add("process cpu " + processCpu + "%");
+			}
+			if (eventLoopCpuMax >= CPU_SATURATION_PERCENT) {
+				reasons.add("event-loop cpu " + eventLoopCpuMax + "%");
+			}
+			long gcPercent = TimeUnit.MILLISECONDS.toNanos(gcTime) * 100 / interval;
+			if (gcPercent >= GC_SATURATION_PERCENT) {
+				reasons.add("gc " + gcPercent + "%");
+			}
+			if (TimeUnit.NANOSECONDS.toMillis(eventLoopLag) >= LAG_SATURATION_MILLIS) {
+				reasons.add("event-loop lag " + TimeUnit.NANOSECONDS.toMillis(eventLoopLag) + "ms");
+			}
+			if (TimeUnit.NANOSECONDS.toMillis(schedulerLag) >= LAG_SATURATION_MILLIS) {
+				reasons.add("scheduler lag " + TimeUnit.NANOSECONDS.toMillis(schedulerLag) + "ms");
+			}
+			return reasons;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"cpu %d%% (%d cores), event-loop cpu %d%%/%d%% (max/avg), scheduler cpu %d%%, alloc %s MB/s, gc %dms, lag %s/%s ms (event-loop/scheduler)",
+					processCpu, Runtime.getRuntime().availableProcessors(), eventLoopCpuMax, eventLoopCpuAverage,
+					schedulerCpu, S3AsyncClientFacade.formatMegabytes(allocationRate), gcTime,
+					LatencyHistogram.format(TimeUnit.NANOSECONDS.toMicros(eventLoopLag)),
+					LatencyHistogram.format(TimeUnit.NANOSECONDS.toMicros(schedulerLag)));
+		}
+	}
+}
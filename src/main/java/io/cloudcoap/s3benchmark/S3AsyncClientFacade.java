@@ -14,35 +14,56 @@
 package io.cloudcoap.s3benchmark;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.AwsRequest;
 import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
 
 /**
  * S3 asynchronous client.
@@ -65,6 +86,10 @@ public class S3AsyncClientFacade {
 	 * Default concurrency for netty-i/o.
 	 */
 	public static final int DEFAULT_CONCURRENCY = 200;
+	/**
+	 * Maximum number of keys for a DeleteObjects request.
+	 */
+	public static final int MAX_DELETE_BATCH = 1000;
 	/**
 	 * Zero as {@link AtomicLong}.
 	 */
@@ -86,11 +111,87 @@ public class S3AsyncClientFacade {
 	 * ACL to use.
 	 */
 	private final String acl;
+	/**
+	 * Use conditional GET requests with the last etags.
+	 */
+	private final boolean conditional;
+	/**
+	 * Read-through cache for GET. {@code null}, if not used.
+	 */
+	private final ObjectCache cache;
+	/**
+	 * Keys of pending GET requests to coalesce cache misses.
+	 */
+	private final ConcurrentMap<String, Boolean> pendingGets = new ConcurrentHashMap<>();
+	/**
+	 * Bandwidth limiter. {@code null}, if not used.
+	 */
+	private final BandwidthLimiter limiter;
+	/**
+	 * Netty event loops, if provided by this client. {@code null}, if the
+	 * default event loops of the http client are used.
+	 */
+	private final SdkEventLoopGroup eventLoopGroup;
+	/**
+	 * Client side resource sampler. {@code null}, if not used.
+	 */
+	private final ResourceSampler sampler;
+	/**
+	 * Capture of slow and failed requests. {@code null}, if not used.
+	 */
+	private final RequestCapture capture;
+	/**
+	 * Fixed delay in nanoseconds before a hedged GET request is sent. {@code 0},
+	 * if not used.
+	 */
+	private final long hedgeDelayNanos;
+	/**
+	 * Latency percentile to derive the delay of hedged GET requests. {@code 0},
+	 * if not used.
+	 */
+	private final double hedgePercentile;
+	/**
+	 * Deadline in nanoseconds for GET requests. {@code 0}, if not used.
+	 */
+	private final long deadlineNanos;
+	/**
+	 * Cancel the losing GET request of a hedge and the requests exceeding the
+	 * deadline.
+	 */
+	private final boolean cancel;
+	/**
+	 * Latencies of the primary GET requests since the last update of
+	 * {@link #hedgeDynamicDelayNanos}. Cancelled requests are recorded with the
+	 * time until cancellation.
+	 */
+	private final LatencyHistogram hedgeLatency = new LatencyHistogram();
+	/**
+	 * Current delay in nanoseconds derived from the latency percentile.
+	 */
+	private volatile long hedgeDynamicDelayNanos;
+	/**
+	 * Nano time of last update of {@link #hedgeDynamicDelayNanos}.
+	 */
+	private volatile long hedgeDynamicDelayUpdate;
+	/**
+	 * Average latency of GET requests for cache misses in nanoseconds.
+	 */
+	private volatile long averageMissNanos;
 
+	/**
+	 * Overall statistic.
+	 */
 	private final Statistic overall;
-
+	/**
+	 * Statistic of current interval.
+	 */
 	private final Statistic current;
 
+	/**
+	 * Samples of the intervals. Requests per second and 99% latency percentile
+	 * in microseconds.
+	 */
+	private final List<long[]> samples = new ArrayList<>();
 	/**
 	 * Maximum pending requests.
 	 */
@@ -129,9 +230,26 @@ public class S3AsyncClientFacade {
 	 * @param acl         ACL to be used for the PUT object
 	 * @param keyId       access-key id.
 	 * @param keySecret   access -secret
+	 * @param conditional {@code true} to use conditional GET requests with the
+	 *                    last etags
+	 * @param cache       read-through cache for GET. May be {@code null}.
+	 * @param limiter     bandwidth limiter. May be {@code null}.
+	 * @param profile     {@code true} to sample the client side resources
+	 * @param hedgeDelay  fixed delay in milliseconds before a hedged GET
+	 *                    request is sent. {@code 0} to use the percentile only.
+	 * @param hedgePercentile latency percentile to derive the delay of hedged GET
+	 *                        requests. {@code 0} to use the fixed delay only.
+	 * @param deadline    deadline in milliseconds for GET requests. {@code 0}
+	 *                    for no deadline.
+	 * @param cancel      {@code true} to cancel the losing GET request of a
+	 *                    hedge and the requests exceeding the deadline,
+	 *                    {@code false} to ignore their responses.
+	 * @param capture     number of slowest and failed requests to capture per
+	 *                    interval. {@code 0} to not capture requests.
 	 */
 	private S3AsyncClientFacade(int concurrency, URI endpoint, String region, String bucket, String acl, String keyId,
-			String keySecret) {
+			String keySecret, boolean conditional, ObjectCache cache, BandwidthLimiter limiter, boolean profile,
+			long hedgeDelay, double hedgePercentile, long deadline, boolean cancel, int capture) {
 		S3AsyncClientBuilder builder = S3AsyncClient.builder();
 		builder.region(Region.of(region));
 		if (endpoint != null) {
@@ -141,15 +259,48 @@ public class S3AsyncClientFacade {
 			AwsBasicCredentials credentials = AwsBasicCredentials.create(keyId, keySecret);
 			builder.credentialsProvider(StaticCredentialsProvider.create(credentials));
 		}
-		builder.httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(concurrency));
+		NettyNioAsyncHttpClient.Builder httpBuilder = NettyNioAsyncHttpClient.builder().maxConcurrency(concurrency);
+		if (profile) {
+			// own event loops to probe them
+			this.eventLoopGroup = SdkEventLoopGroup.builder()
+					.threadFactory(new NamedThreadFactory(ResourceSampler.EVENT_LOOP_THREAD_PREFIX, true)).build();
+			httpBuilder.eventLoopGroup(eventLoopGroup);
+		} else {
+			this.eventLoopGroup = null;
+		}
+		builder.httpClientBuilder(httpBuilder);
+		if (capture > 0) {
+			this.capture = new RequestCapture(capture);
+			builder.overrideConfiguration(ClientOverrideConfiguration.builder()
+					.addExecutionInterceptor(new RequestCapture.Interceptor()).build());
+		} else {
+			this.capture = null;
+		}
 		this.s3Client = builder.build();
 		this.bucket = bucket;
 		this.acl = acl;
+		this.conditional = conditional;
+		this.cache = cache;
+		this.limiter = limiter;
+		this.hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeDelay);
+		this.hedgePercentile = hedgePercentile;
+		this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadline);
+		this.cancel = cancel;
 		long now = System.nanoTime();
 		this.overall = new Statistic(now);
 		this.current = new Statistic(now);
-		this.scheduler = Executors.newScheduledThreadPool(5);
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(5,
+				new NamedThreadFactory(ResourceSampler.SCHEDULER_THREAD_PREFIX, false));
+		// cancelled hedge and deadline tasks must not keep the responses
+		scheduler.setRemoveOnCancelPolicy(true);
+		this.scheduler = scheduler;
 		setMaxPending(concurrency * 2);
+		if (profile) {
+			this.sampler = new ResourceSampler(eventLoopGroup.eventLoopGroup(), scheduler);
+			this.sampler.start();
+		} else {
+			this.sampler = null;
+		}
 	}
 
 	/**
@@ -162,6 +313,102 @@ public class S3AsyncClientFacade {
 		}
 	}
 
+	/**
+	 * Acquire bandwidth before sending a request.
+	 * 
+	 * Blocks, if the bandwidth limit is exceeded.
+	 * 
+	 * @param bytes bytes of the request
+	 */
+	private void acquireBandwidth(long bytes) {
+		if (limiter != null) {
+			limiter.acquire(bytes);
+		}
+	}
+
+	/**
+	 * Report received bytes of a response.
+	 * 
+	 * @param bytes bytes of the response
+	 */
+	private void received(long bytes) {
+		current.responseBytes.addAndGet(bytes);
+		if (limiter != null) {
+			limiter.consume(bytes);
+		}
+	}
+
+	/**
+	 * Get content length of http response.
+	 * 
+	 * @param response http response. May be {@code null}.
+	 * @return content length, or {@code 0}, if not available.
+	 */
+	private static long contentLength(SdkHttpResponse response) {
+		if (response != null) {
+			String length = response.firstMatchingHeader("Content-Length").orElse(null);
+			if (length != null) {
+				try {
+					return Long.parseLong(length.trim());
+				} catch (NumberFormatException e) {
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Attach timing to request, if requests are captured.
+	 * 
+	 * @param builder request builder
+	 * @param start   nano time of start
+	 * @return timing, or {@code null}, if requests are not captured.
+	 */
+	private RequestCapture.Timing timing(AwsRequest.Builder builder, long start) {
+		if (capture == null) {
+			return null;
+		}
+		final RequestCapture.Timing timing = new RequestCapture.Timing(start);
+		builder.overrideConfiguration(c -> c.putExecutionAttribute(RequestCapture.TIMING, timing));
+		return timing;
+	}
+
+	/**
+	 * Capture completed request.
+	 * 
+	 * @param op        operation
+	 * @param key       key or prefix of the request
+	 * @param sent      sent payload bytes
+	 * @param timing    timing of the request. {@code null}, if requests are not
+	 *                  captured.
+	 * @param end       nano time of completion
+	 * @param exception exception of the request. {@code null}, if none.
+	 */
+	private void capture(String op, String key, long sent, RequestCapture.Timing timing, long end,
+			Throwable exception) {
+		if (timing != null) {
+			if (exception instanceof CompletionException) {
+				exception = exception.getCause();
+			}
+			capture.record(op, key, sent, timing, end, exception);
+		}
+	}
+
+	/**
+	 * Log warning for a failed request on completion.
+	 * 
+	 * Skipped, if requests are captured. The {@link RequestCapture} reports
+	 * the failed requests with the next interval instead.
+	 * 
+	 * @param format    format of the message
+	 * @param arguments arguments of the message
+	 */
+	private void warn(String format, Object... arguments) {
+		if (capture == null) {
+			LOGGER.warn(format, arguments);
+		}
+	}
+
 	private void postpone() {
 		current.reduceRateCounter.incrementAndGet();
 		scheduler.schedule(delay, 2000, TimeUnit.MILLISECONDS);
@@ -171,7 +418,14 @@ public class S3AsyncClientFacade {
 	 * Close the client.
 	 */
 	public void close() {
+		if (sampler != null) {
+			sampler.stop();
+		}
 		scheduler.shutdownNow();
+		if (eventLoopGroup != null) {
+			s3Client.close();
+			eventLoopGroup.eventLoopGroup().shutdownGracefully();
+		}
 	}
 
 	/**
@@ -188,6 +442,32 @@ public class S3AsyncClientFacade {
 		}
 	}
 
+	/**
+	 * Completed requests.
+	 * 
+	 * Each page of a LIST is counted as completed request.
+	 * 
+	 * @return number of completed requests since the last
+	 *         {@link #resetStatistic()}.
+	 */
+	public long completed() {
+		synchronized (overall) {
+			return overall.completed.get() + current.completed.get();
+		}
+	}
+
+	/**
+	 * Deleted objects.
+	 * 
+	 * @return number of deleted objects since the last
+	 *         {@link #resetStatistic()}.
+	 */
+	public long deleted() {
+		synchronized (overall) {
+			return overall.deleted.get() + current.deleted.get();
+		}
+	}
+
 	/**
 	 * Get last exception.
 	 * 
@@ -219,9 +499,44 @@ public class S3AsyncClientFacade {
 		return waitPending(ZERO, time, unit);
 	}
 
+	/**
+	 * Wait until requests are completed.
+	 * 
+	 * In difference to {@link #waitReady(long, TimeUnit)} a LIST doesn't need
+	 * to receive all pages, the first page is enough.
+	 * 
+	 * @param completed number of completed requests to wait for
+	 * @param time      maximum time to wait
+	 * @param unit      unit of the time
+	 * @return {@code true}, if the requests are completed, {@code false}, if
+	 *         less requests are completed within the timeout.
+	 * @see #completed()
+	 */
+	public boolean waitCompleted(long completed, long time, TimeUnit unit) {
+		final long end = unit.toNanos(time) + System.nanoTime();
+		synchronized (overall) {
+			while (completed() < completed) {
+				long millis = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+				if (millis <= 0) {
+					return false;
+				}
+				try {
+					overall.wait(millis);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Wait until pending request are below a threshold.
 	 * 
+	 * Dumps the statistic at the interval while waiting. The statistic is
+	 * dumped without holding the lock of the statistic, otherwise the
+	 * completion of the requests is blocked.
+	 * 
 	 * @param pending maximum number of pending requests. If {@link #maxPending} is
 	 *                less than the provided value, it is adjusted to
 	 *                {@link #maxPending}.
@@ -240,24 +555,23 @@ public class S3AsyncClientFacade {
 				}
 			}
 			final long end = unit.toNanos(time) + System.nanoTime();
-			synchronized (overall) {
-				long current = pending();
-				ready = current <= pending.get();
-				while (!ready) {
-					dumpStatistic(10, TimeUnit.SECONDS);
-					long millis = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
-					if (millis > 0) {
-						try {
-							LOGGER.trace("wait {}", millis);
-							overall.wait(millis);
-						} catch (InterruptedException e) {
+			boolean timeout = false;
+			while (!ready && !timeout) {
+				dumpStatistic(10, TimeUnit.SECONDS);
+				synchronized (overall) {
+					ready = pending() <= pending.get();
+					if (!ready) {
+						long millis = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+						if (millis > 0) {
+							try {
+								LOGGER.trace("wait {}", millis);
+								overall.wait(millis);
+							} catch (InterruptedException e) {
+							}
+							ready = pending() <= pending.get();
+						} else {
+							timeout = true;
 						}
-						current = pending();
-						ready = current <= pending.get();
-					} else {
-						// timeout
-						ready = pending() <= pending.get();
-						break;
 					}
 				}
 			}
@@ -285,12 +599,16 @@ public class S3AsyncClientFacade {
 	 * 
 	 * @param interval interval time
 	 * @param unit     time unit of the interval time
+	 * @return {@code true}, if the statistic is dumped, {@code false}, if the
+	 *         interval has not expired.
 	 */
-	public void dumpStatistic(long interval, TimeUnit unit) {
+	public boolean dumpStatistic(long interval, TimeUnit unit) {
 		long now = System.nanoTime();
 		if ((now - current.start - unit.toNanos(interval)) > 0) {
 			dumpStatistic(true);
+			return true;
 		}
+		return false;
 	}
 
 	/**
@@ -299,8 +617,13 @@ public class S3AsyncClientFacade {
 	public void dumpStatistic(boolean transfer) {
 		long now = System.nanoTime();
 		long time, overallTime;
-		long count, sent, failures, rr;
-		long overallCount, overallFailures;
+		long count, sent, failures, rr, listed, deleted;
+		long overallCount, overallFailures, overallListed, overallDeleted;
+		long hits, misses, revalidations, coalesced, saved;
+		long requestBytes, overallRequestBytes, responseBytes, overallResponseBytes;
+		long hedges, hedgeWins, deadlines, primaryCancelled;
+		LatencyHistogram primaryLatency;
+		LatencyHistogram latency;
 		synchronized (overall) {
 			time = TimeUnit.NANOSECONDS.toMillis(now - current.start);
 			overallTime = TimeUnit.NANOSECONDS.toMillis(now - overall.start);
@@ -313,6 +636,38 @@ public class S3AsyncClientFacade {
 				overall.sent.addAndGet(sent);
 				failures = current.failures.getAndSet(0);
 				overallFailures = overall.failures.addAndGet(failures);
+				listed = current.listed.getAndSet(0);
+				overallListed = overall.listed.addAndGet(listed);
+				deleted = current.deleted.getAndSet(0);
+				overallDeleted = overall.deleted.addAndGet(deleted);
+				hits = current.cacheHits.getAndSet(0);
+				overall.cacheHits.addAndGet(hits);
+				misses = current.cacheMisses.getAndSet(0);
+				overall.cacheMisses.addAndGet(misses);
+				revalidations = current.cacheRevalidations.getAndSet(0);
+				overall.cacheRevalidations.addAndGet(revalidations);
+				coalesced = current.cacheCoalesced.getAndSet(0);
+				overall.cacheCoalesced.addAndGet(coalesced);
+				saved = current.cacheSavedNanos.getAndSet(0);
+				overall.cacheSavedNanos.addAndGet(saved);
+				requestBytes = current.requestBytes.getAndSet(0);
+				overallRequestBytes = overall.requestBytes.addAndGet(requestBytes);
+				responseBytes = current.responseBytes.getAndSet(0);
+				overallResponseBytes = overall.responseBytes.addAndGet(responseBytes);
+				hedges = current.hedges.getAndSet(0);
+				overall.hedges.addAndGet(hedges);
+				hedgeWins = current.hedgeWins.getAndSet(0);
+				overall.hedgeWins.addAndGet(hedgeWins);
+				primaryCancelled = current.primaryCancelled.getAndSet(0);
+				overall.primaryCancelled.addAndGet(primaryCancelled);
+				deadlines = current.deadlines.getAndSet(0);
+				overall.deadlines.addAndGet(deadlines);
+				primaryLatency = new LatencyHistogram();
+				current.primaryLatency.transferTo(primaryLatency);
+				primaryLatency.addTo(overall.primaryLatency);
+				latency = new LatencyHistogram();
+				current.latency.transferTo(latency);
+				latency.addTo(overall.latency);
 				current.start = now;
 			} else {
 				count = current.completed.get();
@@ -321,9 +676,98 @@ public class S3AsyncClientFacade {
 				sent = current.sent.get();
 				failures = current.failures.get();
 				overallFailures = overall.failures.get() + failures;
+				listed = current.listed.get();
+				overallListed = overall.listed.get() + listed;
+				deleted = current.deleted.get();
+				overallDeleted = overall.deleted.get() + deleted;
+				hits = current.cacheHits.get();
+				misses = current.cacheMisses.get();
+				revalidations = current.cacheRevalidations.get();
+				coalesced = current.cacheCoalesced.get();
+				saved = current.cacheSavedNanos.get();
+				requestBytes = current.requestBytes.get();
+				overallRequestBytes = overall.requestBytes.get() + requestBytes;
+				responseBytes = current.responseBytes.get();
+				overallResponseBytes = overall.responseBytes.get() + responseBytes;
+				hedges = current.hedges.get();
+				hedgeWins = current.hedgeWins.get();
+				primaryCancelled = current.primaryCancelled.get();
+				deadlines = current.deadlines.get();
+				primaryLatency = current.primaryLatency;
+				latency = current.latency;
+			}
+		}
+		if (time == 0) {
+			time = 1;
+		}
+		if (overallTime == 0) {
+			overallTime = 1;
+		}
+
+		if (transfer && time >= 1000) {
+			synchronized (samples) {
+				samples.add(new long[] { (count * 1000) / time, latency.getPercentile(99) });
 			}
 		}
 
+		StringBuilder line = new StringBuilder();
+		line.append(TimeUnit.MILLISECONDS.toSeconds(overallTime)).append(" ");
+		line.append((count * 1000) / time).append("/").append((overallCount * 1000) / overallTime);
+		line.append(" requests/s");
+		line.append(", ").append(formatMegabytes((requestBytes * 1000) / time)).append("/");
+		line.append(formatMegabytes((overallRequestBytes * 1000) / overallTime)).append(" MB/s sent");
+		line.append(", ").append(formatMegabytes((responseBytes * 1000) / time)).append("/");
+		line.append(formatMegabytes((overallResponseBytes * 1000) / overallTime)).append(" MB/s received");
+		if (overallListed > 0) {
+			line.append(", ").append((listed * 1000) / time).append("/")
+					.append((overallListed * 1000) / overallTime);
+			line.append(" listed/s");
+		}
+		if (overallDeleted > 0) {
+			line.append(", ").append((deleted * 1000) / time).append("/")
+					.append((overallDeleted * 1000) / overallTime);
+			line.append(" deleted/s");
+		}
+		if (latency.getCount() > 0) {
+			line.append(", ").append(LatencyHistogram.format(latency.getAverage())).append("/");
+			line.append(LatencyHistogram.format(latency.getPercentile(50))).append("/");
+			line.append(LatencyHistogram.format(latency.getPercentile(99))).append("/");
+			line.append(LatencyHistogram.format(latency.getMax())).append(" ms (avg/50%/99%/max)");
+		}
+		if (hedgeDelayNanos > 0 || hedgePercentile > 0) {
+			line.append(", hedges ").append(count == 0 ? 0 : (hedges * 100) / count).append("% (");
+			// each hedge wastes one request, either the hedge or the primary
+			line.append(hedges).append(" wasted, ").append(hedgeWins).append(" won)");
+		}
+		if (primaryLatency.getCount() > 0) {
+			line.append(", ").append(LatencyHistogram.format(latency.getPercentile(99))).append("/");
+			line.append(LatencyHistogram.format(latency.getPercentile(99.9))).append(" ms hedged, ");
+			line.append(LatencyHistogram.format(primaryLatency.getPercentile(99))).append("/");
+			line.append(LatencyHistogram.format(primaryLatency.getPercentile(99.9))).append(" ms primary (99%/99.9%)");
+		}
+		if (primaryCancelled > 0) {
+			line.append(", ").append(primaryCancelled).append(" primaries cancelled");
+		}
+		if (deadlines > 0) {
+			line.append(", ").append(deadlines).append(" deadlines exceeded");
+		}
+		long lookups = hits + misses + revalidations + coalesced;
+		if (lookups > 0) {
+			line.append(", cache ").append((lookups * 1000) / time).append(" lookups/s ");
+			line.append((hits * 100) / lookups).append("% hits, ");
+			line.append((revalidations * 100) / lookups).append("% revalidations, ");
+			line.append((misses * 100) / lookups).append("% misses, ");
+			line.append((coalesced * 100) / lookups).append("% coalesced, ");
+			line.append(TimeUnit.NANOSECONDS.toMillis(saved)).append(" ms saved");
+		}
+		line.append(", overall: ").append(overallCount).append(" requests, ");
+		line.append(overallFailures).append(" failures");
+		if (overallListed > 0) {
+			line.append(", ").append(overallListed).append(" listed");
+		}
+		if (overallDeleted > 0) {
+			line.append(", ").append(overallDeleted).append(" deleted");
+		}
 		if (rr > 0) {
 			if (transfer && sent > 0) {
 				long max = maxPending.get();
@@ -331,13 +775,90 @@ public class S3AsyncClientFacade {
 				LOGGER.debug("Max. pending {} => {} ({}%)", max, newMax, (rr * 100) / sent);
 				maxPending.compareAndSet(max, newMax);
 			}
-			LOGGER.info("{} {}/{} requests/s, overall: {} requests, {} failures, {} rr, {} max. pending",
-					TimeUnit.MILLISECONDS.toSeconds(overallTime), ((count * 1000) / time),
-					((overallCount * 1000) / overallTime), overallCount, overallFailures, rr, maxPending.get());
-		} else {
-			LOGGER.info("{} {}/{} requests/s, overall: {} requests, {} failures",
-					TimeUnit.MILLISECONDS.toSeconds(overallTime), ((count * 1000) / time),
-					((overallCount * 1000) / time), overallCount, overallFailures);
+			line.append(", ").append(rr).append(" rr, ");
+			line.append(maxPending.get()).append(" max. pending");
+		}
+		LOGGER.info("{}", line);
+		if (sampler != null && transfer) {
+			ResourceSampler.Sample sample = sampler.sample();
+			LOGGER.info("{} {}", TimeUnit.MILLISECONDS.toSeconds(overallTime), sample);
+			List<String> saturation = sample.getSaturation();
+			if (!saturation.isEmpty()) {
+				overall.saturated.incrementAndGet();
+				LOGGER.warn("Client saturated, results are not reliable! {}", saturation);
+			}
+		}
+		if (capture != null && transfer) {
+			capture.dump(TimeUnit.MILLISECONDS.toSeconds(overallTime));
+			if (latency.getCount() > 0) {
+				// slow requests of the next interval are above the 99% of this one
+				capture.threshold(latency.getPercentile(99), TimeUnit.MICROSECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Format bytes as megabytes.
+	 * 
+	 * @param bytes bytes
+	 * @return formatted megabytes with one decimal
+	 */
+	public static String formatMegabytes(long bytes) {
+		return String.format("%.1f", bytes / (1024.0 * 1024.0));
+	}
+
+	/**
+	 * Dump and reset statistic.
+	 * 
+	 * Starts a new overall statistic, e.g. to separate the measured phase from a
+	 * preparing phase. Still pending requests are kept. Clears the last exception,
+	 * last http error status and the threshold for slow requests as well.
+	 */
+	public void resetStatistic() {
+		dumpStatistic(true);
+		lastException = null;
+		lastErrorStatus = null;
+		if (capture != null) {
+			capture.reset();
+		}
+		synchronized (overall) {
+			long now = System.nanoTime();
+			long pending = pending();
+			overall.reset(now);
+			current.reset(now);
+			overall.sent.set(pending);
+		}
+		synchronized (samples) {
+			samples.clear();
+		}
+	}
+
+	/**
+	 * Get overall result.
+	 * 
+	 * Call {@link #dumpStatistic(boolean)} with {@code true} before in order to
+	 * include the current interval. The samples contain the intervals of at
+	 * least one second.
+	 * 
+	 * @param name name of the result
+	 * @return overall result
+	 */
+	public BenchmarkResult getResult(String name) {
+		long[] throughputSamples;
+		long[] p99Samples;
+		synchronized (samples) {
+			throughputSamples = new long[samples.size()];
+			p99Samples = new long[samples.size()];
+			for (int index = 0; index < samples.size(); ++index) {
+				throughputSamples[index] = samples.get(index)[0];
+				p99Samples[index] = samples.get(index)[1];
+			}
+		}
+		synchronized (overall) {
+			long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - overall.start);
+			return new BenchmarkResult(name, time, overall.completed.get(), overall.failures.get(),
+					overall.requestBytes.get(), overall.responseBytes.get(), overall.saturated.get(),
+					overall.latency, throughputSamples, p99Samples);
 		}
 	}
 
@@ -357,11 +878,17 @@ public class S3AsyncClientFacade {
 				putBuilder.acl(acl);
 			}
 			AsyncRequestBody body = AsyncRequestBody.fromBytes(data);
+			acquireBandwidth(data.length);
 			current.sent.incrementAndGet();
+			current.requestBytes.addAndGet(data.length);
 			final long now = System.nanoTime();
+			final RequestCapture.Timing timing = timing(putBuilder, now);
 			CompletableFuture<PutObjectResponse> future = s3Client.putObject(putBuilder.build(), body);
 			future.whenComplete((putResponse, exception) -> {
-				long timeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now);
+				long time = System.nanoTime() - now;
+				current.latency.record(time);
+				capture("PUT", key, data.length, timing, now + time, exception);
+				long timeMillis = TimeUnit.NANOSECONDS.toMillis(time);
 				SdkHttpResponse httpErrorResponse = null;
 				if (exception != null) {
 					Throwable cause = exception;
@@ -374,18 +901,22 @@ public class S3AsyncClientFacade {
 					}
 					if (httpErrorResponse == null) {
 						lastException = cause;
-						LOGGER.warn(">S3: ({}ms)", timeMillis, exception);
+						warn(">S3: ({}ms)", timeMillis, exception);
 						current.failures.incrementAndGet();
 					}
 				} else if (putResponse != null) {
 					SdkHttpResponse httpResponse = putResponse.sdkHttpResponse();
 					if (httpResponse == null || httpResponse.isSuccessful()) {
+						received(contentLength(httpResponse));
 						LOGGER.debug(">S3: ({}ms) {}", timeMillis,
 								httpResponse == null ? "-" : httpResponse.statusCode());
 						String eTag = putResponse.eTag();
 						if (eTag != null) {
 							etags.put(key, eTag);
 						}
+						if (cache != null) {
+							cache.invalidate(key);
+						}
 					} else {
 						httpErrorResponse = httpResponse;
 					}
@@ -393,12 +924,13 @@ public class S3AsyncClientFacade {
 					LOGGER.debug(">S3: ({}ms) no response nor error!", timeMillis);
 				}
 				if (httpErrorResponse != null) {
+					received(contentLength(httpErrorResponse));
 					if (httpErrorResponse.statusCode() == 503) {
 						// delay complete()
 						postpone();
 						return;
 					}
-					LOGGER.warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
+					warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
 							httpErrorResponse.statusText());
 					current.failures.incrementAndGet();
 					lastErrorStatus = httpErrorResponse.statusCode();
@@ -415,21 +947,64 @@ public class S3AsyncClientFacade {
 	/**
 	 * Start GET request.
 	 * 
+	 * If a cache is used, fresh cache hits are served without request, expired
+	 * cache hits are revalidated, and concurrent cache misses for the same key
+	 * are coalesced into one request. Fresh cache hits and coalesced misses are
+	 * not counted as completed requests. Successful PUT and DELETE requests
+	 * invalidate the cached objects.
+	 * 
 	 * @param key key for the object
 	 */
 	public void get(String key) {
+		if (cache == null) {
+			acquireBandwidth(0);
+			get(key, conditional ? etags.get(key) : null, null);
+			return;
+		}
+		long now = System.nanoTime();
+		ObjectCache.Entry entry = cache.get(key);
+		if (entry != null && !entry.isExpired(now)) {
+			entry.read();
+			long saved = averageMissNanos - (System.nanoTime() - now);
+			if (saved > 0) {
+				current.cacheSavedNanos.addAndGet(saved);
+			}
+			current.cacheHits.incrementAndGet();
+		} else if (pendingGets.putIfAbsent(key, Boolean.TRUE) != null) {
+			current.cacheCoalesced.incrementAndGet();
+		} else if (entry != null) {
+			current.cacheRevalidations.incrementAndGet();
+			acquireBandwidth(0);
+			get(key, entry.eTag, entry);
+		} else {
+			current.cacheMisses.incrementAndGet();
+			acquireBandwidth(0);
+			get(key, null, null);
+		}
+	}
+
+	/**
+	 * Start GET request.
+	 * 
+	 * @param key    key for the object
+	 * @param eTag   etag for conditional request. May be {@code null}.
+	 * @param cached cache entry to revalidate. May be {@code null}.
+	 */
+	private void get(final String key, final String eTag, final ObjectCache.Entry cached) {
 		try {
 			GetObjectRequest.Builder getBuilder = GetObjectRequest.builder().bucket(bucket).key(key);
-			final String eTag = etags.get(key);
 			if (eTag != null) {
 				getBuilder.ifNoneMatch(eTag);
 			}
 			current.sent.incrementAndGet();
 			final long now = System.nanoTime();
-			CompletableFuture<ResponseBytes<GetObjectResponse>> future = s3Client.getObject(getBuilder.build(),
-					AsyncResponseTransformer.toBytes());
+			final RequestCapture.Timing timing = timing(getBuilder, now);
+			CompletableFuture<ResponseBytes<GetObjectResponse>> future = getObject(getBuilder.build());
 			future.whenComplete((getResponse, exception) -> {
-				long timeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now);
+				long time = System.nanoTime() - now;
+				current.latency.record(time);
+				capture("GET", key, 0, timing, now + time, exception);
+				long timeMillis = TimeUnit.NANOSECONDS.toMillis(time);
 				SdkHttpResponse httpErrorResponse = null;
 				if (exception != null) {
 					Throwable cause = exception;
@@ -440,9 +1015,13 @@ public class S3AsyncClientFacade {
 						AwsErrorDetails details = ((S3Exception) cause).awsErrorDetails();
 						httpErrorResponse = details.sdkHttpResponse();
 					}
-					if (httpErrorResponse == null) {
+					if (cause instanceof TimeoutException) {
+						LOGGER.debug(">S3: ({}ms) deadline exceeded", timeMillis);
+						current.deadlines.incrementAndGet();
+						current.failures.incrementAndGet();
+					} else if (httpErrorResponse == null) {
 						lastException = cause;
-						LOGGER.warn(">S3: ({}ms)", timeMillis, exception);
+						warn(">S3: ({}ms)", timeMillis, exception);
 						current.failures.incrementAndGet();
 					}
 				} else if (getResponse != null) {
@@ -451,7 +1030,13 @@ public class S3AsyncClientFacade {
 						LOGGER.debug(">S3: ({}ms) {}", timeMillis,
 								httpResponse == null ? "-" : httpResponse.statusCode());
 						String eTag2 = getResponse.response().eTag();
-						if (eTag2 != null && !eTag2.equals(eTag)) {
+						if (cache != null) {
+							if (cached == null) {
+								// only cache misses, revalidations don't save latency
+								averageMissNanos += (time - averageMissNanos) / 16;
+							}
+							cache.put(key, eTag2, getResponse.asByteArrayUnsafe());
+						} else if (eTag2 != null && !eTag2.equals(eTag)) {
 							etags.put(key, eTag2);
 							LOGGER.debug(">S3: ({}ms) eTag {}/{}", timeMillis, key, eTag2);
 						}
@@ -461,6 +1046,12 @@ public class S3AsyncClientFacade {
 				} else {
 					LOGGER.debug(">S3: ({}ms) no response nor error!", timeMillis);
 				}
+				if (cache != null) {
+					if (cached != null && httpErrorResponse != null && httpErrorResponse.statusCode() == 304) {
+						cache.refresh(cached);
+					}
+					pendingGets.remove(key);
+				}
 				if (httpErrorResponse != null) {
 					if (httpErrorResponse.statusCode() == 503) {
 						// delay complete()
@@ -469,7 +1060,7 @@ public class S3AsyncClientFacade {
 					} else if (httpErrorResponse.statusCode() == 304) {
 						LOGGER.debug(">S3: ({}ms) not modified", timeMillis);
 					} else {
-						LOGGER.warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
+						warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
 								httpErrorResponse.statusText());
 						current.failures.incrementAndGet();
 						lastErrorStatus = httpErrorResponse.statusCode();
@@ -479,53 +1070,607 @@ public class S3AsyncClientFacade {
 			});
 		} catch (S3Exception e) {
 			LOGGER.warn("S3:", e);
+			pendingGets.remove(key);
 		} catch (SdkException e) {
 			LOGGER.warn("S3:", e);
+			pendingGets.remove(key);
 		}
 	}
 
 	/**
-	 * Get builder for client.
+	 * Send GET request.
 	 * 
-	 * @return builder
+	 * If hedging is enabled, a duplicate request is sent, when the first one is
+	 * not completed after the hedge delay and the bandwidth limit allows it.
+	 * The hedged request is counted as sent request. The first completed
+	 * request wins. If a deadline is set, the returned future is completed with
+	 * a {@link TimeoutException}, when the deadline expires. If cancelling is
+	 * enabled, the other requests are cancelled, otherwise their responses are
+	 * ignored, but they are still counted as pending.
+	 * 
+	 * @param request GET request
+	 * @return future with the response of the winning request
 	 */
-	public static Builder builder() {
-		return new Builder();
+	private CompletableFuture<ResponseBytes<GetObjectResponse>> getObject(final GetObjectRequest request) {
+		final CompletableFuture<ResponseBytes<GetObjectResponse>> primary = s3Client.getObject(request,
+				AsyncResponseTransformer.toBytes());
+		primary.whenComplete(this::received);
+		final long delay = hedgeDelay();
+		if (delay <= 0 && deadlineNanos <= 0 && hedgePercentile <= 0) {
+			return primary;
+		}
+		final long now = System.nanoTime();
+		final CompletableFuture<ResponseBytes<GetObjectResponse>> result = new CompletableFuture<>();
+		primary.whenComplete((response, exception) -> {
+			long time = System.nanoTime() - now;
+			if (hedgePercentile > 0) {
+				// cancelled requests are at least that slow
+				hedgeLatency.record(time);
+			}
+			if (isCancelled(exception)) {
+				current.primaryCancelled.incrementAndGet();
+			} else {
+				current.primaryLatency.record(time);
+			}
+			complete(result, response, exception);
+		});
+		final ScheduledFuture<?> hedgeTask;
+		if (delay > 0) {
+			hedgeTask = scheduler.schedule(() -> {
+				if (!result.isDone()) {
+					hedge(request, result);
+				}
+			}, delay, TimeUnit.NANOSECONDS);
+		} else {
+			hedgeTask = null;
+		}
+		final ScheduledFuture<?> deadlineTask;
+		if (deadlineNanos > 0) {
+			deadlineTask = scheduler.schedule(() -> {
+				result.completeExceptionally(new TimeoutException("deadline exceeded"));
+			}, deadlineNanos, TimeUnit.NANOSECONDS);
+		} else {
+			deadlineTask = null;
+		}
+		result.whenComplete((response, exception) -> {
+			if (hedgeTask != null) {
+				hedgeTask.cancel(false);
+			}
+			if (deadlineTask != null) {
+				deadlineTask.cancel(false);
+			}
+			if (!primary.isDone()) {
+				if (cancel) {
+					primary.cancel(true);
+				} else {
+					pending(primary);
+				}
+			}
+		});
+		return result;
 	}
 
 	/**
-	 * Builder for client.
+	 * Send hedged GET request.
+	 * 
+	 * Skipped, if the bandwidth limit is exceeded.
+	 * 
+	 * @param request GET request
+	 * @param result  future to complete with the response of the winning
+	 *                request
 	 */
-	public static class Builder {
+	private void hedge(final GetObjectRequest request,
+			final CompletableFuture<ResponseBytes<GetObjectResponse>> result) {
+		if (limiter != null && !limiter.tryAcquire(0)) {
+			// don't block the scheduler
+			LOGGER.debug("S3: hedge skipped, bandwidth limit exceeded");
+			return;
+		}
+		try {
+			current.sent.incrementAndGet();
+			current.hedges.incrementAndGet();
+			final CompletableFuture<ResponseBytes<GetObjectResponse>> hedge = s3Client.getObject(request,
+					AsyncResponseTransformer.toBytes());
+			hedge.whenComplete((response, exception) -> {
+				received(response, exception);
+				if (complete(result, response, exception)) {
+					current.hedgeWins.incrementAndGet();
+				}
+				complete();
+			});
+			if (cancel) {
+				result.whenComplete((response, exception) -> hedge.cancel(true));
+			}
+		} catch (SdkException e) {
+			LOGGER.debug("S3: hedge failed", e);
+			complete();
+		}
+	}
 
-		private URI endpoint;
-		private String region = DEFAULT_REGION;
-		private String bucket = DEFAULT_S3_BUCKET;
-		private String acl;
-		private String keyId;
-		private String keySecret;
-		private int concurrency = DEFAULT_CONCURRENCY;
+	/**
+	 * Keep request pending after the completion of the GET.
+	 * 
+	 * Used for not cancelled requests, which lost against a hedged request or
+	 * exceeded the deadline. These requests are not counted again as completed
+	 * requests.
+	 * 
+	 * @param request pending request
+	 */
+	private void pending(CompletableFuture<?> request) {
+		current.sent.incrementAndGet();
+		request.whenComplete((response, exception) -> {
+			synchronized (overall) {
+				current.sent.decrementAndGet();
+				overall.notifyAll();
+			}
+		});
+	}
 
-		/**
-		 * Set the endpoint as URI.
-		 * 
-		 * @param endpoint the endpoint
-		 * @return builder to chain commands
-		 */
-		public Builder endpoint(URI endpoint) {
-			this.endpoint = endpoint;
-			return this;
+	/**
+	 * Report received bytes of a GET response.
+	 * 
+	 * @param response  response. {@code null}, if exception is provided.
+	 * @param exception exception. {@code null}, if response is provided.
+	 */
+	private void received(ResponseBytes<GetObjectResponse> response, Throwable exception) {
+		SdkHttpResponse httpResponse = null;
+		if (response != null) {
+			httpResponse = response.response().sdkHttpResponse();
+			if (httpResponse == null || httpResponse.isSuccessful()) {
+				received(response.asByteArrayUnsafe().length);
+				return;
+			}
+		} else if (exception != null) {
+			Throwable cause = exception;
+			if (exception instanceof CompletionException) {
+				cause = exception.getCause();
+			}
+			if (cause instanceof S3Exception) {
+				httpResponse = ((S3Exception) cause).awsErrorDetails().sdkHttpResponse();
+			}
 		}
+		received(contentLength(httpResponse));
+	}
 
-		/**
-		 * Set the endpoint as string.
-		 * 
-		 * @param endpoint the endpoint
-		 * @return builder to chain commands
-		 */
-		public Builder endpoint(String endpoint) {
-			this.endpoint = URI.create(endpoint);
-			return this;
+	/**
+	 * Check, if request is cancelled.
+	 * 
+	 * @param exception exception of the request. May be {@code null}.
+	 * @return {@code true}, if the request is cancelled, {@code false},
+	 *         otherwise.
+	 */
+	private static boolean isCancelled(Throwable exception) {
+		if (exception instanceof CompletionException) {
+			exception = exception.getCause();
+		}
+		return exception instanceof CancellationException;
+	}
+
+	/**
+	 * Complete future with response or exception.
+	 * 
+	 * @param future    future to complete
+	 * @param response  response. {@code null}, if exception is provided.
+	 * @param exception exception. {@code null}, if response is provided.
+	 * @return {@code true}, if the future is completed by this call,
+	 *         {@code false}, if the future was already completed before.
+	 */
+	private static <T> boolean complete(CompletableFuture<T> future, T response, Throwable exception) {
+		if (exception != null) {
+			return future.completeExceptionally(exception);
+		} else {
+			return future.complete(response);
+		}
+	}
+
+	/**
+	 * Get delay for hedged GET requests.
+	 * 
+	 * The delay is derived from the latency percentile of the primary requests
+	 * and not from the hedged results, which are lowered by hedging. The delay
+	 * is updated at most once a second and requires at least 100 latencies
+	 * recorded since the last update.
+	 * 
+	 * @return delay in nanoseconds. {@code 0}, if no hedged request is sent.
+	 */
+	private long hedgeDelay() {
+		if (hedgePercentile <= 0) {
+			return hedgeDelayNanos;
+		}
+		long now = System.nanoTime();
+		if ((now - hedgeDynamicDelayUpdate - TimeUnit.SECONDS.toNanos(1)) > 0
+				&& hedgeLatency.getCount() >= 100) {
+			hedgeDynamicDelayUpdate = now;
+			LatencyHistogram latency = new LatencyHistogram();
+			hedgeLatency.transferTo(latency);
+			hedgeDynamicDelayNanos = TimeUnit.MICROSECONDS.toNanos(latency.getPercentile(hedgePercentile));
+		}
+		long delay = hedgeDynamicDelayNanos;
+		return delay > 0 ? delay : hedgeDelayNanos;
+	}
+
+	/**
+	 * Start DELETE request.
+	 * 
+	 * Uses DeleteObject for a single key.
+	 * 
+	 * @param key key for the object
+	 */
+	public void delete(String key) {
+		try {
+			DeleteObjectRequest.Builder deleteBuilder = DeleteObjectRequest.builder().bucket(bucket).key(key);
+			acquireBandwidth(0);
+			current.sent.incrementAndGet();
+			final long now = System.nanoTime();
+			final RequestCapture.Timing timing = timing(deleteBuilder, now);
+			CompletableFuture<DeleteObjectResponse> future = s3Client.deleteObject(deleteBuilder.build());
+			future.whenComplete((deleteResponse, exception) -> {
+				long time = System.nanoTime() - now;
+				current.latency.record(time);
+				capture("DELETE", key, 0, timing, now + time, exception);
+				long timeMillis = TimeUnit.NANOSECONDS.toMillis(time);
+				SdkHttpResponse httpErrorResponse = null;
+				if (exception != null) {
+					Throwable cause = exception;
+					if (exception instanceof CompletionException) {
+						cause = exception.getCause();
+					}
+					if (cause instanceof S3Exception) {
+						AwsErrorDetails details = ((S3Exception) cause).awsErrorDetails();
+						httpErrorResponse = details.sdkHttpResponse();
+					}
+					if (httpErrorResponse == null) {
+						lastException = cause;
+						warn(">S3: ({}ms)", timeMillis, exception);
+						current.failures.incrementAndGet();
+					}
+				} else if (deleteResponse != null) {
+					SdkHttpResponse httpResponse = deleteResponse.sdkHttpResponse();
+					if (httpResponse == null || httpResponse.isSuccessful()) {
+						received(contentLength(httpResponse));
+						LOGGER.debug(">S3: ({}ms) {}", timeMillis,
+								httpResponse == null ? "-" : httpResponse.statusCode());
+						etags.remove(key);
+						if (cache != null) {
+							cache.invalidate(key);
+						}
+						current.deleted.incrementAndGet();
+					} else {
+						httpErrorResponse = httpResponse;
+					}
+				} else {
+					LOGGER.debug(">S3: ({}ms) no response nor error!", timeMillis);
+				}
+				if (httpErrorResponse != null) {
+					received(contentLength(httpErrorResponse));
+					if (httpErrorResponse.statusCode() == 503) {
+						// delay complete()
+						postpone();
+						return;
+					}
+					warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
+							httpErrorResponse.statusText());
+					current.failures.incrementAndGet();
+					lastErrorStatus = httpErrorResponse.statusCode();
+				}
+				complete();
+			});
+		} catch (S3Exception e) {
+			LOGGER.warn("S3:", e);
+		} catch (SdkException e) {
+			LOGGER.warn("S3:", e);
+		}
+	}
+
+	/**
+	 * Start batched DELETE request.
+	 * 
+	 * Uses DeleteObjects in quiet mode, therefore only the keys failed to delete
+	 * are reported by the response.
+	 * 
+	 * @param keys keys of the objects. At most {@link #MAX_DELETE_BATCH} keys.
+	 * @throws IllegalArgumentException if more than {@link #MAX_DELETE_BATCH}
+	 *                                  keys are provided.
+	 */
+	public void delete(final List<String> keys) {
+		if (keys.size() > MAX_DELETE_BATCH) {
+			throw new IllegalArgumentException(
+					keys.size() + " keys exceeds the maximum of " + MAX_DELETE_BATCH + " keys!");
+		}
+		try {
+			List<ObjectIdentifier> objects = new ArrayList<>(keys.size());
+			for (String key : keys) {
+				objects.add(ObjectIdentifier.builder().key(key).build());
+			}
+			Delete delete = Delete.builder().objects(objects).quiet(true).build();
+			DeleteObjectsRequest.Builder deleteBuilder = DeleteObjectsRequest.builder().bucket(bucket)
+					.delete(delete);
+			acquireBandwidth(0);
+			current.sent.incrementAndGet();
+			final long now = System.nanoTime();
+			final RequestCapture.Timing timing = timing(deleteBuilder, now);
+			CompletableFuture<DeleteObjectsResponse> future = s3Client.deleteObjects(deleteBuilder.build());
+			future.whenComplete((deleteResponse, exception) -> {
+				long time = System.nanoTime() - now;
+				current.latency.record(time);
+				if (timing != null && deleteResponse != null && !deleteResponse.errors().isEmpty()) {
+					S3Error error = deleteResponse.errors().get(0);
+					timing.fail(deleteResponse.errors().size() + " of " + keys.size() + " keys not deleted, "
+							+ error.key() + " - " + error.message());
+				}
+				// first key of the batch
+				capture("DELETE_OBJECTS", keys.get(0), 0, timing, now + time, exception);
+				long timeMillis = TimeUnit.NANOSECONDS.toMillis(time);
+				SdkHttpResponse httpErrorResponse = null;
+				if (exception != null) {
+					Throwable cause = exception;
+					if (exception instanceof CompletionException) {
+						cause = exception.getCause();
+					}
+					if (cause instanceof S3Exception) {
+						AwsErrorDetails details = ((S3Exception) cause).awsErrorDetails();
+						httpErrorResponse = details.sdkHttpResponse();
+					}
+					if (httpErrorResponse == null) {
+						lastException = cause;
+						warn(">S3: ({}ms)", timeMillis, exception);
+						current.failures.incrementAndGet();
+					}
+				} else if (deleteResponse != null) {
+					SdkHttpResponse httpResponse = deleteResponse.sdkHttpResponse();
+					if (httpResponse == null || httpResponse.isSuccessful()) {
+						received(contentLength(httpResponse));
+						int errors = deleteResponse.errors().size();
+						LOGGER.debug(">S3: ({}ms) {} {} keys, {} errors", timeMillis,
+								httpResponse == null ? "-" : httpResponse.statusCode(), keys.size(), errors);
+						for (String key : keys) {
+							etags.remove(key);
+							if (cache != null) {
+								cache.invalidate(key);
+							}
+						}
+						current.deleted.addAndGet(keys.size() - errors);
+						if (errors > 0) {
+							warn(">S3: ({}ms) {} of {} keys not deleted, {} - {}!", timeMillis, errors,
+									keys.size(), deleteResponse.errors().get(0).key(),
+									deleteResponse.errors().get(0).message());
+							current.failures.incrementAndGet();
+						}
+					} else {
+						httpErrorResponse = httpResponse;
+					}
+				} else {
+					LOGGER.debug(">S3: ({}ms) no response nor error!", timeMillis);
+				}
+				if (httpErrorResponse != null) {
+					received(contentLength(httpErrorResponse));
+					if (httpErrorResponse.statusCode() == 503) {
+						// delay complete()
+						postpone();
+						return;
+					}
+					warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
+							httpErrorResponse.statusText());
+					current.failures.incrementAndGet();
+					lastErrorStatus = httpErrorResponse.statusCode();
+				}
+				complete();
+			});
+		} catch (S3Exception e) {
+			LOGGER.warn("S3:", e);
+		} catch (SdkException e) {
+			LOGGER.warn("S3:", e);
+		}
+	}
+
+	/**
+	 * Start LIST requests.
+	 * 
+	 * Lists the objects with the provided prefix using ListObjectsV2. The
+	 * continuation tokens are followed until the last page is received. Each
+	 * page is counted as separate request.
+	 * 
+	 * @param prefix   prefix of the keys
+	 * @param pageSize maximum number of keys per page
+	 * @param keys     consumer for the listed keys. May be {@code null}.
+	 * @return future, which is completed when the last page is received or
+	 *         completed exceptionally, when listing failed.
+	 */
+	public CompletableFuture<Void> list(String prefix, int pageSize, Consumer<String> keys) {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		acquireBandwidth(0);
+		list(prefix, pageSize, null, keys, done);
+		return done;
+	}
+
+	/**
+	 * Start LIST request for a page.
+	 * 
+	 * @param prefix   prefix of the keys
+	 * @param pageSize maximum number of keys per page
+	 * @param token    continuation token. {@code null} for the first page.
+	 * @param keys     consumer for the listed keys. May be {@code null}.
+	 * @param done     future to complete, when the last page is received
+	 */
+	private void list(final String prefix, final int pageSize, final String token, final Consumer<String> keys,
+			final CompletableFuture<Void> done) {
+		try {
+			ListObjectsV2Request.Builder listBuilder = ListObjectsV2Request.builder().bucket(bucket).prefix(prefix)
+					.maxKeys(pageSize);
+			if (token != null) {
+				listBuilder.continuationToken(token);
+			}
+			current.sent.incrementAndGet();
+			final long now = System.nanoTime();
+			final RequestCapture.Timing timing = timing(listBuilder, now);
+			CompletableFuture<ListObjectsV2Response> future = s3Client.listObjectsV2(listBuilder.build());
+			future.whenComplete((listResponse, exception) -> {
+				long time = System.nanoTime() - now;
+				current.latency.record(time);
+				capture("LIST", prefix, 0, timing, now + time, exception);
+				long timeMillis = TimeUnit.NANOSECONDS.toMillis(time);
+				SdkHttpResponse httpErrorResponse = null;
+				if (exception != null) {
+					Throwable cause = exception;
+					if (exception instanceof CompletionException) {
+						cause = exception.getCause();
+					}
+					if (cause instanceof S3Exception) {
+						AwsErrorDetails details = ((S3Exception) cause).awsErrorDetails();
+						httpErrorResponse = details.sdkHttpResponse();
+					}
+					if (httpErrorResponse == null) {
+						lastException = cause;
+						warn(">S3: ({}ms)", timeMillis, exception);
+						current.failures.incrementAndGet();
+						done.completeExceptionally(cause);
+					}
+				} else if (listResponse != null) {
+					SdkHttpResponse httpResponse = listResponse.sdkHttpResponse();
+					if (httpResponse == null || httpResponse.isSuccessful()) {
+						received(contentLength(httpResponse));
+						LOGGER.debug(">S3: ({}ms) {} {} keys", timeMillis,
+								httpResponse == null ? "-" : httpResponse.statusCode(), listResponse.keyCount());
+						current.listed.addAndGet(listResponse.contents().size());
+						if (keys != null) {
+							for (S3Object object : listResponse.contents()) {
+								keys.accept(object.key());
+							}
+						}
+						String next = listResponse.nextContinuationToken();
+						if (Boolean.TRUE.equals(listResponse.isTruncated()) && next != null) {
+							// send next page before complete() keeps the listing pending
+							list(prefix, pageSize, next, keys, done);
+						} else {
+							done.complete(null);
+						}
+					} else {
+						httpErrorResponse = httpResponse;
+					}
+				} else {
+					LOGGER.debug(">S3: ({}ms) no response nor error!", timeMillis);
+					done.complete(null);
+				}
+				if (httpErrorResponse != null) {
+					received(contentLength(httpErrorResponse));
+					if (httpErrorResponse.statusCode() == 503) {
+						// retry page and complete() after delay
+						current.reduceRateCounter.incrementAndGet();
+						scheduler.schedule(() -> {
+							list(prefix, pageSize, token, keys, done);
+							complete();
+						}, 2000, TimeUnit.MILLISECONDS);
+						return;
+					}
+					warn(">S3: ({}ms) {} - {}!", timeMillis, httpErrorResponse.statusCode(),
+							httpErrorResponse.statusText());
+					current.failures.incrementAndGet();
+					lastErrorStatus = httpErrorResponse.statusCode();
+					done.completeExceptionally(new IllegalStateException(
+							"LIST " + prefix + " failed with " + httpErrorResponse.statusCode()));
+				}
+				complete();
+			});
+		} catch (S3Exception e) {
+			LOGGER.warn("S3:", e);
+			done.completeExceptionally(e);
+		} catch (SdkException e) {
+			LOGGER.warn("S3:", e);
+			done.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Thread factory with thread name prefix.
+	 * 
+	 * The prefix is used by the {@link ResourceSampler} to identify the
+	 * threads.
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		/**
+		 * Prefix of thread names.
+		 */
+		private final String prefix;
+		/**
+		 * {@code true} to create daemon threads.
+		 */
+		private final boolean daemon;
+		/**
+		 * Number of created threads.
+		 */
+		private final AtomicInteger threads = new AtomicInteger();
+
+		/**
+		 * Create thread factory.
+		 * 
+		 * @param prefix prefix of thread names
+		 * @param daemon {@code true} to create daemon threads
+		 */
+		private NamedThreadFactory(String prefix, boolean daemon) {
+			this.prefix = prefix;
+			this.daemon = daemon;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + threads.incrementAndGet());
+			thread.setDaemon(daemon);
+			return thread;
+		}
+	}
+
+	/**
+	 * Get builder for client.
+	 * 
+	 * @return builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Builder for client.
+	 */
+	public static class Builder {
+
+		private URI endpoint;
+		private String region = DEFAULT_REGION;
+		private String bucket = DEFAULT_S3_BUCKET;
+		private String acl;
+		private String keyId;
+		private String keySecret;
+		private int concurrency = DEFAULT_CONCURRENCY;
+		private boolean conditional = true;
+		private ObjectCache cache;
+		private BandwidthLimiter limiter;
+		private boolean profile;
+		private long hedgeDelay;
+		private double hedgePercentile;
+		private long deadline;
+		private boolean cancel = true;
+		private int capture;
+
+		/**
+		 * Set the endpoint as URI.
+		 * 
+		 * @param endpoint the endpoint
+		 * @return builder to chain commands
+		 */
+		public Builder endpoint(URI endpoint) {
+			this.endpoint = endpoint;
+			return this;
+		}
+
+		/**
+		 * Set the endpoint as string.
+		 * 
+		 * @param endpoint the endpoint
+		 * @return builder to chain commands
+		 */
+		public Builder endpoint(String endpoint) {
+			this.endpoint = URI.create(endpoint);
+			return this;
 		}
 
 		/**
@@ -602,13 +1747,116 @@ public class S3AsyncClientFacade {
 			return this;
 		}
 
+		/**
+		 * Set conditional GET requests.
+		 * 
+		 * @param conditional {@code true} to send GET requests with the etag of
+		 *                    the last PUT or GET of the key, {@code false} to
+		 *                    always request the payload. Default {@code true}.
+		 * @return builder to chain commands
+		 */
+		public Builder conditional(boolean conditional) {
+			this.conditional = conditional;
+			return this;
+		}
+
+		/**
+		 * Set the read-through cache for GET.
+		 * 
+		 * @param cache the cache. {@code null} to not use a cache.
+		 * @return builder to chain commands
+		 */
+		public Builder cache(ObjectCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * Set the bandwidth limiter.
+		 * 
+		 * @param limiter the bandwidth limiter. {@code null} to not limit the
+		 *                bandwidth.
+		 * @return builder to chain commands
+		 */
+		public Builder bandwidthLimiter(BandwidthLimiter limiter) {
+			this.limiter = limiter;
+			return this;
+		}
+
+		/**
+		 * Enable client side resource profiling.
+		 * 
+		 * @param profile {@code true} to sample the client side resources with
+		 *                each interval of the statistic
+		 * @return builder to chain commands
+		 */
+		public Builder profile(boolean profile) {
+			this.profile = profile;
+			return this;
+		}
+
+		/**
+		 * Enable hedged GET requests.
+		 * 
+		 * @param delay      fixed delay in milliseconds before a hedged request is
+		 *                   sent. If a percentile is provided, the delay is only
+		 *                   used until enough latencies are recorded. {@code 0} to
+		 *                   use the percentile only.
+		 * @param percentile latency percentile to derive the delay. {@code 0} to
+		 *                   use the fixed delay only.
+		 * @return builder to chain commands
+		 */
+		public Builder hedge(long delay, double percentile) {
+			this.hedgeDelay = delay;
+			this.hedgePercentile = percentile;
+			return this;
+		}
+
+		/**
+		 * Set deadline for GET requests.
+		 * 
+		 * @param deadline deadline in milliseconds. {@code 0} for no deadline.
+		 * @return builder to chain commands
+		 */
+		public Builder deadline(long deadline) {
+			this.deadline = deadline;
+			return this;
+		}
+
+		/**
+		 * Set cancelling of hedged GET requests and GET requests exceeding the
+		 * deadline.
+		 * 
+		 * @param cancel {@code true} to cancel the losing request of a hedge and
+		 *               the requests exceeding the deadline, {@code false} to
+		 *               ignore their responses. Default {@code true}.
+		 * @return builder to chain commands
+		 */
+		public Builder cancel(boolean cancel) {
+			this.cancel = cancel;
+			return this;
+		}
+
+		/**
+		 * Enable capture of slow and failed requests.
+		 * 
+		 * @param capture number of slowest and failed requests to dump per
+		 *                interval. {@code 0} to not capture requests.
+		 * @return builder to chain commands
+		 */
+		public Builder capture(int capture) {
+			this.capture = capture;
+			return this;
+		}
+
 		/**
 		 * Build the client with the already provided arguments.
 		 * 
 		 * @return create client
 		 */
 		public S3AsyncClientFacade build() {
-			return new S3AsyncClientFacade(concurrency, endpoint, region, bucket, acl, keyId, keySecret);
+			return new S3AsyncClientFacade(concurrency, endpoint, region, bucket, acl, keyId, keySecret, conditional,
+					cache, limiter, profile, hedgeDelay, hedgePercentile, deadline, cancel, capture);
 		}
 	}
 
@@ -633,9 +1881,106 @@ public class S3AsyncClientFacade {
 		 * Number of "503 reduce rate" response for requests.
 		 */
 		private final AtomicLong reduceRateCounter = new AtomicLong();
+		/**
+		 * Number of listed objects.
+		 */
+		private final AtomicLong listed = new AtomicLong();
+		/**
+		 * Number of deleted objects.
+		 */
+		private final AtomicLong deleted = new AtomicLong();
+		/**
+		 * Latencies of requests.
+		 */
+		private final LatencyHistogram latency = new LatencyHistogram();
+		/**
+		 * Number of fresh cache hits.
+		 */
+		private final AtomicLong cacheHits = new AtomicLong();
+		/**
+		 * Number of cache misses.
+		 */
+		private final AtomicLong cacheMisses = new AtomicLong();
+		/**
+		 * Number of expired cache hits, which are revalidated.
+		 */
+		private final AtomicLong cacheRevalidations = new AtomicLong();
+		/**
+		 * Number of cache misses or revalidations coalesced with a pending GET
+		 * request.
+		 */
+		private final AtomicLong cacheCoalesced = new AtomicLong();
+		/**
+		 * Latency saved by fresh cache hits in nanoseconds.
+		 */
+		private final AtomicLong cacheSavedNanos = new AtomicLong();
+		/**
+		 * Number of sent payload bytes.
+		 */
+		private final AtomicLong requestBytes = new AtomicLong();
+		/**
+		 * Number of received payload bytes.
+		 */
+		private final AtomicLong responseBytes = new AtomicLong();
+		/**
+		 * Number of intervals with saturated client.
+		 */
+		private final AtomicLong saturated = new AtomicLong();
+		/**
+		 * Number of hedged GET requests.
+		 */
+		private final AtomicLong hedges = new AtomicLong();
+		/**
+		 * Number of hedged GET requests, which completed first.
+		 */
+		private final AtomicLong hedgeWins = new AtomicLong();
+		/**
+		 * Number of GET requests, which exceeded the deadline.
+		 */
+		private final AtomicLong deadlines = new AtomicLong();
+		/**
+		 * Latencies of the primary GET requests, if hedging or deadlines are
+		 * used. Only the requests completed on their own are recorded, so
+		 * that represents the latencies without hedging and deadlines.
+		 */
+		private final LatencyHistogram primaryLatency = new LatencyHistogram();
+		/**
+		 * Number of cancelled primary GET requests. Not included in the
+		 * {@link #primaryLatency}.
+		 */
+		private final AtomicLong primaryCancelled = new AtomicLong();
 
 		private Statistic(long time) {
 			this.start = time;
 		}
+
+		/**
+		 * Reset statistic.
+		 * 
+		 * @param time start nano time
+		 */
+		private void reset(long time) {
+			this.start = time;
+			sent.set(0);
+			completed.set(0);
+			failures.set(0);
+			reduceRateCounter.set(0);
+			listed.set(0);
+			deleted.set(0);
+			latency.reset();
+			cacheHits.set(0);
+			cacheMisses.set(0);
+			cacheRevalidations.set(0);
+			cacheCoalesced.set(0);
+			cacheSavedNanos.set(0);
+			requestBytes.set(0);
+			responseBytes.set(0);
+			saturated.set(0);
+			hedges.set(0);
+			hedgeWins.set(0);
+			deadlines.set(0);
+			primaryLatency.reset();
+			primaryCancelled.set(0);
+		}
 	}
 }
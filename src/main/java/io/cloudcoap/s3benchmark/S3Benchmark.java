@@ -13,7 +13,19 @@
  ******************************************************************************/
 package io.cloudcoap.s3benchmark;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -21,9 +33,11 @@ import org.slf4j.LoggerFactory;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.ITypeConverter;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.ParseResult;
+import picocli.CommandLine.TypeConversionException;
 
 /**
  * S3 benchmark.
@@ -32,9 +46,22 @@ public class S3Benchmark {
 	private static final Logger LOGGER = LoggerFactory.getLogger(S3Benchmark.class);
 
 	enum Method {
-		GET, PUT
+		GET, PUT, LIST, DELETE
 	}
 
+	enum KeyDistribution {
+		SEQUENTIAL, UNIFORM, ZIPF
+	}
+
+	/**
+	 * Number of digits used for the key ids.
+	 */
+	private static final int KEY_ID_DIGITS = 5;
+	/**
+	 * Number of retries of the cleanup, if keys are left.
+	 */
+	private static final int CLEANUP_RETRIES = 3;
+
 	@Command(name = "S3Benchmark", version = "(c) 2022, Achim Kraus, cloudcoap.net")
 	public static class Config {
 		@Option(names = { "-h", "--help" }, usageHelp = true, description = "display a help message")
@@ -70,25 +97,148 @@ public class S3Benchmark {
 		public int requests;
 
 		@Option(names = { "-m",
-				"--method" }, defaultValue = "PUT", required = false, description = "Method to test. GET or PUT. Default ${DEFAULT-VALUE}")
+				"--method" }, defaultValue = "PUT", required = false, description = "Method to test. GET, PUT, LIST or DELETE. Default ${DEFAULT-VALUE}")
 		public Method method;
 
 		@Option(names = { "-p",
 				"--payload" }, required = false, description = "Payload. Applies format(payload, request-number).")
 		public String payload;
 
-		@Option(names = { "-pl", "--payload-length" }, required = false, description = "Payload length.")
+		@Option(names = { "-pl",
+				"--payload-length" }, converter = SizeConverter.class, required = false, description = "Payload length. Supports K and M suffix.")
 		public Integer payloadLength;
 
+		@Option(names = "--prepopulate", required = false, description = "Write all keys before the measured phase. Keys already present are skipped.")
+		public boolean prepopulate;
+
+		@Option(names = "--list-page-size", defaultValue = "1000", required = false, description = "Maximum keys per LIST page. Default ${DEFAULT-VALUE}")
+		public int listPageSize;
+
+		@Option(names = "--list-prefix-depth", defaultValue = "1", required = false, description = "Number of key id digits used as LIST prefix. Each LIST request lists one of 10^depth prefixes. Default ${DEFAULT-VALUE}")
+		public int listPrefixDepth;
+
+		@Option(names = "--delete-batch", defaultValue = "1", required = false, description = "Number of keys per DELETE request. 1 uses DeleteObject, more uses DeleteObjects. Maximum 1000. Default ${DEFAULT-VALUE}")
+		public int deleteBatch;
+
+		@Option(names = "--cleanup", required = false, description = "Delete all keys with the benchmark prefix after the measured phase.")
+		public boolean cleanup;
+
+		@Option(names = "--sweep-concurrency", split = ",", required = false, description = "Sweep concurrency values, e.g. 50,100,200,400,800.")
+		public int[] sweepConcurrency;
+
+		@Option(names = "--sweep-payload-length", split = ",", converter = SizeConverter.class, required = false, description = "Sweep payload lengths, e.g. 1K,64K,1M,4M.")
+		public Integer[] sweepPayloadLength;
+
+		@Option(names = "--sweep-method", split = ",", required = false, description = "Sweep methods, e.g. PUT,GET.")
+		public Method[] sweepMethod;
+
+		@Option(names = "--sweep-warmup", defaultValue = "1000", required = false, description = "Number of warmup requests before the sweep. Default ${DEFAULT-VALUE}")
+		public int sweepWarmup;
+
+		@Option(names = "--sweep-cooldown", defaultValue = "5", required = false, description = "Cooldown in seconds between the sweep cells. Default ${DEFAULT-VALUE}")
+		public int sweepCooldown;
+
+		@Option(names = "--key-distribution", defaultValue = "SEQUENTIAL", required = false, description = "Distribution of the keys for GET, PUT and DELETE. SEQUENTIAL, UNIFORM or ZIPF. Default ${DEFAULT-VALUE}")
+		public KeyDistribution keyDistribution;
+
+		@Option(names = "--zipf-exponent", defaultValue = "0.99", required = false, description = "Exponent for ZIPF key distribution. Default ${DEFAULT-VALUE}")
+		public double zipfExponent;
+
+		@Option(names = "--cache-size", converter = SizeConverter.class, required = false, description = "Size of read-through cache for GET in bytes. Supports K and M suffix. Default no cache.")
+		public Integer cacheSize;
+
+		@Option(names = "--cache-eviction", defaultValue = "TINY_LFU", required = false, description = "Eviction of the cache. LRU or TINY_LFU. Default ${DEFAULT-VALUE}")
+		public ObjectCache.Eviction cacheEviction;
+
+		@Option(names = "--cache-off-heap", required = false, description = "Store cached objects off-heap.")
+		public boolean cacheOffHeap;
+
+		@Option(names = "--cache-ttl", defaultValue = "60", required = false, description = "Time to live of cached objects in seconds before revalidation. 0 to revalidate always. Default ${DEFAULT-VALUE}")
+		public int cacheTtl;
+
+		@Option(names = "--bandwidth-limit", required = false, description = "Limit sent and received payload bytes in MB/s. Default no limit.")
+		public Double bandwidthLimit;
+
+		@Option(names = "--profile", required = false, description = "Sample client side resources (cpu, allocation, gc, event-loop lag) with each interval and warn, if the client is saturated.")
+		public boolean profile;
+
+		@Option(names = "--hedge-delay", required = false, description = "Delay in milliseconds before a hedged GET request is sent. With --hedge-percentile only used as initial delay.")
+		public Long hedgeDelay;
+
+		@Option(names = "--hedge-percentile", required = false, description = "Latency percentile to derive the delay of hedged GET requests, e.g. 95.")
+		public Double hedgePercentile;
+
+		@Option(names = "--deadline", required = false, description = "Deadline in milliseconds for GET requests. Default no deadline.")
+		public Long deadline;
+
+		@Option(names = "--hedge-cancel", negatable = true, defaultValue = "true", fallbackValue = "true", required = false, description = "Cancel the losing hedged GET request and GET requests exceeding the deadline. With --no-hedge-cancel their responses are ignored. Default ${DEFAULT-VALUE}")
+		public boolean hedgeCancel;
+
+		@Option(names = "--capture", required = false, description = "Capture the slowest and the failed requests without logging and dump that number of them with each interval. Default no capture.")
+		public Integer capture;
+
+		@Option(names = "--save-result", required = false, description = "File to save the results, e.g. as baseline for later runs.")
+		public File saveResult;
+
+		@Option(names = "--baseline", required = false, description = "File with baseline results to compare with. Exits with 2 on significant regression.")
+		public File baseline;
+
+		@Option(names = "--tolerance-throughput", defaultValue = "10", required = false, description = "Tolerated throughput decrease in percent. Default ${DEFAULT-VALUE}")
+		public double toleranceThroughput;
+
+		@Option(names = "--tolerance-latency", defaultValue = "20", required = false, description = "Tolerated latency increase in percent. Default ${DEFAULT-VALUE}")
+		public double toleranceLatency;
+
+		@Option(names = "--tolerance-errors", defaultValue = "1", required = false, description = "Tolerated error rate increase in percentage points. Default ${DEFAULT-VALUE}")
+		public double toleranceErrors;
+
+		@Option(names = "--significance", defaultValue = "0.05", required = false, description = "Significance level of the statistical test over the interval samples. Default ${DEFAULT-VALUE}")
+		public double significance;
+
 		private String additionalPayload;
 	}
 
+	/**
+	 * Converter for sizes with K or M suffix.
+	 */
+	public static class SizeConverter implements ITypeConverter<Integer> {
+
+		@Override
+		public Integer convert(String value) throws Exception {
+			String size = value.trim().toUpperCase();
+			int factor = 1;
+			if (size.endsWith("K")) {
+				factor = 1024;
+				size = size.substring(0, size.length() - 1);
+			} else if (size.endsWith("M")) {
+				factor = 1024 * 1024;
+				size = size.substring(0, size.length() - 1);
+			}
+			try {
+				int length = Math.multiplyExact(Integer.parseInt(size), factor);
+				if (length < 0) {
+					throw new TypeConversionException("'" + value + "' must not be negative!");
+				}
+				return length;
+			} catch (ArithmeticException ex) {
+				throw new TypeConversionException("'" + value + "' exceeds the maximum of " + Integer.MAX_VALUE + "!");
+			}
+		}
+	}
+
 	private static final Config config = new Config();
 
+	/**
+	 * Cumulative distribution of key ids for {@link KeyDistribution#ZIPF}.
+	 */
+	private static double[] zipf;
+
 	public static void main(String[] args) {
 		CommandLine cmd = new CommandLine(config);
+		boolean concurrencyProvided = false;
 		try {
 			ParseResult result = cmd.parseArgs(args);
+			concurrencyProvided = result.hasMatchedOption("--s3-concurrency");
 			if (result.isVersionHelpRequested()) {
 				System.out.println("\n" + cmd.getCommandName());
 				cmd.printVersionHelp(System.out);
@@ -104,7 +254,66 @@ public class S3Benchmark {
 			cmd.usage(System.err);
 			System.exit(-1);
 		}
-		final S3AsyncClientFacade client = createS3Client(config);
+		if (config.listPrefixDepth < 0 || config.listPrefixDepth > KEY_ID_DIGITS) {
+			System.err.println("--list-prefix-depth must be in range [0.." + KEY_ID_DIGITS + "]!");
+			System.exit(-1);
+		}
+		if (config.deleteBatch < 1 || config.deleteBatch > S3AsyncClientFacade.MAX_DELETE_BATCH) {
+			System.err.println("--delete-batch must be in range [1.." + S3AsyncClientFacade.MAX_DELETE_BATCH + "]!");
+			System.exit(-1);
+		}
+		if (config.deleteBatch > config.keys) {
+			System.err.println("--delete-batch must not exceed --keys!");
+			System.exit(-1);
+		}
+		// rejects also NaN
+		if (config.bandwidthLimit != null && !(config.bandwidthLimit * 1024 * 1024 >= 1)) {
+			System.err.println("--bandwidth-limit must be at least 1 byte per second!");
+			System.exit(-1);
+		}
+		if (config.capture != null && config.capture < 1) {
+			System.err.println("--capture must be at least 1!");
+			System.exit(-1);
+		}
+		boolean sweep = config.sweepConcurrency != null || config.sweepPayloadLength != null
+				|| config.sweepMethod != null;
+		if (sweep && config.cacheSize != null) {
+			// fresh cache hits don't complete requests, the first request of a
+			// GET cell must not be a cache hit
+			System.err.println("--cache-size is not supported with sweeps!");
+			System.exit(-1);
+		}
+		if (sweep) {
+			if (config.sweepConcurrency == null) {
+				config.sweepConcurrency = new int[] { config.concurrency };
+			}
+			if (config.sweepPayloadLength == null) {
+				config.sweepPayloadLength = new Integer[] { config.payloadLength };
+			}
+			if (config.sweepMethod == null) {
+				config.sweepMethod = new Method[] { config.method };
+			}
+			// the shared client requires the maximum concurrency
+			int concurrency = concurrencyProvided ? config.concurrency : 1;
+			for (int cell : config.sweepConcurrency) {
+				concurrency = Math.max(concurrency, cell);
+			}
+			config.concurrency = concurrency;
+		}
+		List<BenchmarkResult> baseline = null;
+		if (config.baseline != null) {
+			try {
+				baseline = Baseline.load(config.baseline);
+			} catch (IOException | IllegalArgumentException ex) {
+				System.err.println("Loading baseline " + config.baseline + " failed: " + ex.getMessage());
+				System.exit(-1);
+			}
+		}
+		if (config.keyDistribution == KeyDistribution.ZIPF) {
+			zipf = zipf(config.keys, config.zipfExponent);
+		}
+		// GET cells must read the payload, not 304 of the etags of the PUT cells
+		final S3AsyncClientFacade client = createS3Client(config, !sweep);
 		Runtime.getRuntime().addShutdownHook(new Thread("SHUTDOWN") {
 
 			@Override
@@ -123,8 +332,53 @@ public class S3Benchmark {
 		if (config.payloadLength != null) {
 			config.additionalPayload = additionalPayload(config.payloadLength);
 		}
-		int requests = 0;
-		sendRequest(config, client, requests);
+		if (config.prepopulate) {
+			prepopulate(config, client);
+		}
+		List<BenchmarkResult> results = new ArrayList<>();
+		if (sweep) {
+			results.addAll(sweep(config, client));
+		} else if (config.requests > 0) {
+			if (benchmark(config, client, config.requests, config.concurrency * 2)) {
+				client.dumpStatistic(true);
+				results.add(client.getResult(config.method.name()));
+			}
+		}
+		if (config.cleanup) {
+			cleanup(config, client);
+		}
+		client.close();
+		if (config.saveResult != null) {
+			try {
+				Baseline.save(config.saveResult, results);
+				LOGGER.info("Results saved to {}.", config.saveResult);
+			} catch (IOException ex) {
+				LOGGER.error("Saving results to {} failed!", config.saveResult, ex);
+			}
+		}
+		if (baseline != null) {
+			Baseline comparison = new Baseline(config.toleranceThroughput, config.toleranceLatency,
+					config.toleranceErrors, config.significance);
+			if (comparison.compare(baseline, results)) {
+				System.exit(2);
+			}
+		}
+	}
+
+	/**
+	 * Run the measured phase.
+	 * 
+	 * @param config     CLI configuration
+	 * @param client     client facade
+	 * @param requests   number of requests
+	 * @param maxPending maximum pending requests
+	 * @return {@code true}, if the phase is executed, {@code false}, if the
+	 *         first request failed.
+	 */
+	private static boolean benchmark(Config config, S3AsyncClientFacade client, int requests, int maxPending) {
+		int request = 0;
+		long completed = client.completed();
+		sendRequest(config, client, request);
 		if (config.endpoint != null) {
 			LOGGER.info("S3 Benchmark started! {} - {} - {}", config.method, config.bucket, config.endpoint);
 		} else if (config.region != null) {
@@ -132,18 +386,309 @@ public class S3Benchmark {
 		} else {
 			LOGGER.info("S3 Benchmark started! {} - {}", config.method, config.bucket);
 		}
-		if (client.waitReady(3000, TimeUnit.MILLISECONDS) && client.getLastException() == null
+		// a LIST completes the first page before all pages are received
+		if (client.waitCompleted(completed + 1, 3000, TimeUnit.MILLISECONDS) && client.getLastException() == null
 				&& client.getLastErrorStatus() == null) {
-			AtomicLong pending = client.setMaxPending(config.concurrency * 2);
-			for (requests = 1; requests < config.requests; ++requests) {
-				sendRequest(config, client, requests);
+			AtomicLong pending = client.setMaxPending(maxPending);
+			for (request = 1; request < requests; ++request) {
+				sendRequest(config, client, request);
 				client.waitPending(pending, 10, TimeUnit.SECONDS);
 				client.dumpStatistic(10, TimeUnit.SECONDS);
 			}
 			LOGGER.info("Shutdown ...");
 			client.waitReady(10000, TimeUnit.MILLISECONDS);
+			return true;
+		} else {
+			LOGGER.warn("S3 Benchmark stopped! First request failed or not completed in time.");
+			return false;
 		}
-		client.close();
+	}
+
+	/**
+	 * Run the parameter sweep.
+	 * 
+	 * Runs the measured phase for each combination of payload length,
+	 * concurrency and method in sequence using the shared client. GET cells
+	 * read the objects written by the previous PUT cell, therefore PUT must be
+	 * listed before GET. The GET requests are unconditional, otherwise the
+	 * etags of the PUT cell result in "304 Not Modified" without payload. The
+	 * concurrency of a cell limits the pending requests, the connections of the
+	 * shared client are limited by the maximum concurrency. In difference to a
+	 * single run, no requests are queued in the client, the pending requests
+	 * are all in flight.
+	 * 
+	 * @param config CLI configuration
+	 * @param client client facade
+	 * @return results of the succeeded cells
+	 */
+	private static List<BenchmarkResult> sweep(Config config, S3AsyncClientFacade client) {
+		List<BenchmarkResult> results = new ArrayList<>();
+		if (config.sweepWarmup > 0) {
+			LOGGER.info("Sweep warmup {} requests ...", config.sweepWarmup);
+			setupCell(config, config.sweepMethod[0], config.sweepConcurrency[0], config.sweepPayloadLength[0]);
+			if (!benchmark(config, client, config.sweepWarmup, config.concurrency)) {
+				return results;
+			}
+		}
+		for (Integer payloadLength : config.sweepPayloadLength) {
+			for (int concurrency : config.sweepConcurrency) {
+				for (Method method : config.sweepMethod) {
+					if (!results.isEmpty() || config.sweepWarmup > 0) {
+						cooldown(config, client);
+					}
+					String name = setupCell(config, method, concurrency, payloadLength);
+					LOGGER.info("Sweep {} ...", name);
+					client.resetStatistic();
+					if (benchmark(config, client, config.requests, concurrency)) {
+						client.dumpStatistic(true);
+						results.add(client.getResult(name));
+					} else {
+						results.add(null);
+					}
+				}
+			}
+		}
+		LOGGER.info("Sweep results:");
+		LOGGER.info(String.format("%-20s %10s %8s %8s %8s %8s %8s %8s %8s %8s %9s", "cell", "requests/s", "MB/s",
+				"failures", "avg", "50%", "90%", "99%", "99.9%", "max", "saturated"));
+		int index = 0;
+		for (Integer payloadLength : config.sweepPayloadLength) {
+			for (int concurrency : config.sweepConcurrency) {
+				for (Method method : config.sweepMethod) {
+					BenchmarkResult result = results.get(index++);
+					if (result == null) {
+						LOGGER.info(String.format("%-20s %10s", cellName(method, concurrency, payloadLength),
+								"failed"));
+					} else {
+						LOGGER.info(String.format("%-20s %10d %8s %8d %8s %8s %8s %8s %8s %8s %9d", result.name,
+								result.getRequestsPerSecond(),
+								S3AsyncClientFacade.formatMegabytes(result.getBytesPerSecond()), result.failures,
+								LatencyHistogram.format(result.average), LatencyHistogram.format(result.p50),
+								LatencyHistogram.format(result.p90), LatencyHistogram.format(result.p99),
+								LatencyHistogram.format(result.p999), LatencyHistogram.format(result.max),
+								result.saturated));
+					}
+				}
+			}
+		}
+		LOGGER.info("(latencies in ms, saturated client intervals)");
+		List<BenchmarkResult> succeeded = new ArrayList<>();
+		for (BenchmarkResult result : results) {
+			if (result != null) {
+				succeeded.add(result);
+			}
+		}
+		return succeeded;
+	}
+
+	/**
+	 * Setup configuration for sweep cell.
+	 * 
+	 * @param config        CLI configuration
+	 * @param method        method of the cell
+	 * @param concurrency   concurrency of the cell
+	 * @param payloadLength payload length of the cell. May be {@code null}.
+	 * @return name of the cell
+	 */
+	private static String setupCell(Config config, Method method, int concurrency, Integer payloadLength) {
+		config.method = method;
+		config.concurrency = concurrency;
+		config.payloadLength = payloadLength;
+		config.additionalPayload = payloadLength == null ? null : additionalPayload(payloadLength);
+		return cellName(method, concurrency, payloadLength);
+	}
+
+	/**
+	 * Get name of sweep cell.
+	 * 
+	 * @param method        method of the cell
+	 * @param concurrency   concurrency of the cell
+	 * @param payloadLength payload length of the cell. May be {@code null}.
+	 * @return name of the cell
+	 */
+	private static String cellName(Method method, int concurrency, Integer payloadLength) {
+		return method + "/" + concurrency + "/" + (payloadLength == null ? "-" : payloadLength);
+	}
+
+	/**
+	 * Cooldown between sweep cells.
+	 * 
+	 * @param config CLI configuration
+	 * @param client client facade
+	 */
+	private static void cooldown(Config config, S3AsyncClientFacade client) {
+		client.waitReady(10, TimeUnit.SECONDS);
+		if (config.sweepCooldown > 0) {
+			try {
+				Thread.sleep(TimeUnit.SECONDS.toMillis(config.sweepCooldown));
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	/**
+	 * Cleanup the keys.
+	 * 
+	 * Lists and deletes the keys with the benchmark prefix. If keys are left,
+	 * because the listing failed or batches or single keys failed to delete,
+	 * e.g. on throttling, listing and deleting is retried up to
+	 * {@link #CLEANUP_RETRIES} times.
+	 * 
+	 * @param config CLI configuration
+	 * @param client client facade
+	 */
+	private static void cleanup(Config config, S3AsyncClientFacade client) {
+		LOGGER.info("Cleanup ...");
+		client.resetStatistic();
+		for (int retry = 0;; ++retry) {
+			long deleted = client.deleted();
+			long submitted = deleteListed(config, client);
+			deleted = client.deleted() - deleted;
+			if (submitted >= 0) {
+				LOGGER.info("Cleanup {} of {} keys deleted.", deleted, submitted);
+				if (deleted == submitted) {
+					break;
+				}
+			}
+			if (retry == CLEANUP_RETRIES) {
+				LOGGER.warn("Cleanup: not all keys are deleted!");
+				break;
+			}
+			LOGGER.info("Cleanup retry {} of {} ...", retry + 1, CLEANUP_RETRIES);
+			try {
+				// let the throttling recover
+				Thread.sleep(2000);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		LOGGER.info("Cleanup {} keys deleted.", client.deleted());
+	}
+
+	/**
+	 * List and delete the keys.
+	 * 
+	 * Lists the keys with the benchmark prefix and deletes them using
+	 * DeleteObjects with the maximum batch size. The batches are sent while the
+	 * listing is still in progress. The listings of the prefixes are started
+	 * within the limit of the pending requests.
+	 * 
+	 * @param config CLI configuration
+	 * @param client client facade
+	 * @return number of keys submitted to delete, or {@code -1}, if listing
+	 *         the keys failed.
+	 */
+	private static long deleteListed(Config config, S3AsyncClientFacade client) {
+		ConcurrentLinkedQueue<String> keys = new ConcurrentLinkedQueue<>();
+		int prefixes = prefixes(config.listPrefixDepth);
+		CompletableFuture<?>[] listings = new CompletableFuture<?>[prefixes];
+		CompletableFuture<Void> listing = null;
+		int started = 0;
+		AtomicLong pending = client.setMaxPending(config.concurrency * 2);
+		List<String> batch = new ArrayList<>(S3AsyncClientFacade.MAX_DELETE_BATCH);
+		long submitted = 0;
+		boolean listed = false;
+		while (!listed) {
+			// start listings as long as the pending requests allow it
+			while (started < prefixes && client.pending() < pending.get()) {
+				listings[started] = client.list(prefix(started, config.listPrefixDepth), config.listPageSize,
+						keys::add);
+				++started;
+			}
+			if (listing == null && started == prefixes) {
+				listing = CompletableFuture.allOf(listings);
+			}
+			// read before draining the queue, so no key is left
+			listed = listing != null && listing.isDone();
+			String key;
+			while ((key = keys.poll()) != null) {
+				batch.add(key);
+				if (batch.size() == S3AsyncClientFacade.MAX_DELETE_BATCH) {
+					client.delete(batch);
+					submitted += batch.size();
+					batch = new ArrayList<>(S3AsyncClientFacade.MAX_DELETE_BATCH);
+					client.waitPending(pending, 10, TimeUnit.SECONDS);
+					client.dumpStatistic(10, TimeUnit.SECONDS);
+				}
+			}
+			if (listing == null) {
+				client.waitPending(pending, 100, TimeUnit.MILLISECONDS);
+				client.dumpStatistic(10, TimeUnit.SECONDS);
+			} else if (!listed) {
+				try {
+					listing.get(100, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+				} catch (ExecutionException e) {
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+		if (!batch.isEmpty()) {
+			client.delete(batch);
+			submitted += batch.size();
+		}
+		while (!client.waitReady(10, TimeUnit.SECONDS)) {
+			LOGGER.info("Cleanup {} pending requests left.", client.pending());
+		}
+		client.dumpStatistic(true);
+		if (listing == null || listing.isCompletedExceptionally()) {
+			LOGGER.warn("Cleanup: listing keys failed, not all keys are deleted!");
+			return -1;
+		}
+		return submitted;
+	}
+
+	/**
+	 * Prepopulate the keys.
+	 * 
+	 * Lists the already existing keys first and writes the missing ones. That
+	 * allows to resume an interrupted prepopulation.
+	 * 
+	 * @param config CLI configuration
+	 * @param client client facade
+	 */
+	private static void prepopulate(Config config, S3AsyncClientFacade client) {
+		LOGGER.info("Prepopulate {} keys ...", config.keys);
+		Set<String> existing = ConcurrentHashMap.newKeySet();
+		int prefixes = prefixes(config.listPrefixDepth);
+		CompletableFuture<?>[] listings = new CompletableFuture<?>[prefixes];
+		AtomicLong pending = client.setMaxPending(config.concurrency * 2);
+		for (int index = 0; index < prefixes; ++index) {
+			listings[index] = client.list(prefix(index, config.listPrefixDepth), config.listPageSize,
+					existing::add);
+			client.waitPending(pending, 10, TimeUnit.SECONDS);
+			client.dumpStatistic(10, TimeUnit.SECONDS);
+		}
+		try {
+			CompletableFuture.allOf(listings).join();
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Prepopulate: listing existing keys failed, write all keys!", ex);
+			existing.clear();
+		}
+		int skipped = 0;
+		int written = 0;
+		int progress = Math.max(config.keys / 20, 1);
+		for (int id = 0; id < config.keys; ++id) {
+			String key = key(id);
+			if (existing.contains(key)) {
+				++skipped;
+			} else {
+				client.put(key, payload(config, id));
+				++written;
+				client.waitPending(pending, 10, TimeUnit.SECONDS);
+				client.dumpStatistic(10, TimeUnit.SECONDS);
+			}
+			if ((id + 1) % progress == 0) {
+				LOGGER.info("Prepopulate {}/{} keys, {} written, {} skipped.", id + 1, config.keys, written,
+						skipped);
+			}
+		}
+		while (!client.waitReady(10, TimeUnit.SECONDS)) {
+			LOGGER.info("Prepopulate {} pending requests left.", client.pending());
+		}
+		LOGGER.info("Prepopulate {} keys finished, {} written, {} skipped.", config.keys, written, skipped);
+		client.resetStatistic();
 	}
 
 	/**
@@ -154,26 +699,133 @@ public class S3Benchmark {
 	 * @param requests current number of request.
 	 */
 	private static void sendRequest(Config config, S3AsyncClientFacade client, int requests) {
-		int id = requests % config.keys;
-		String key = String.format("benchmark/client%05d", id);
+		int id = keyId(config, requests);
 		switch (config.method) {
 		case GET:
-			client.get(key);
+			client.get(key(id));
 			break;
 		case PUT:
-			String payload = config.payload;
-			if (payload == null) {
-				payload = "Hello, S3, %05d!";
-			}
-			payload = String.format(payload, requests);
-			if (config.payloadLength != null) {
-				payload += " " + config.additionalPayload.substring(payload.length() + 1);
+			client.put(key(id), payload(config, requests));
+			break;
+		case LIST:
+			int prefixes = prefixes(config.listPrefixDepth);
+			client.list(prefix(requests % prefixes, config.listPrefixDepth), config.listPageSize, null);
+			break;
+		case DELETE:
+			if (config.deleteBatch == 1) {
+				client.delete(key(id));
+			} else {
+				List<String> keys = new ArrayList<>(config.deleteBatch);
+				for (int index = 0; index < config.deleteBatch; ++index) {
+					keys.add(key((int) (((long) requests * config.deleteBatch + index) % config.keys)));
+				}
+				client.delete(keys);
 			}
-			client.put(key, payload);
 			break;
 		}
 	}
 
+	/**
+	 * Get key id according the key distribution.
+	 * 
+	 * @param config   CLI configuration
+	 * @param requests current number of request.
+	 * @return key id
+	 */
+	private static int keyId(Config config, int requests) {
+		switch (config.keyDistribution) {
+		case UNIFORM:
+			return ThreadLocalRandom.current().nextInt(config.keys);
+		case ZIPF:
+			int id = Arrays.binarySearch(zipf, ThreadLocalRandom.current().nextDouble());
+			if (id < 0) {
+				id = -id - 1;
+			}
+			return Math.min(id, config.keys - 1);
+		default:
+			return requests % config.keys;
+		}
+	}
+
+	/**
+	 * Create cumulative distribution for zipf.
+	 * 
+	 * @param keys     number of keys
+	 * @param exponent exponent of the zipf distribution
+	 * @return cumulative distribution. The key id {@code 0} is the most
+	 *         frequent one.
+	 */
+	private static double[] zipf(int keys, double exponent) {
+		double[] cdf = new double[keys];
+		double sum = 0;
+		for (int index = 0; index < keys; ++index) {
+			sum += 1.0 / Math.pow(index + 1, exponent);
+			cdf[index] = sum;
+		}
+		for (int index = 0; index < keys; ++index) {
+			cdf[index] /= sum;
+		}
+		return cdf;
+	}
+
+	/**
+	 * Get key for id.
+	 * 
+	 * @param id id of the key
+	 * @return key
+	 */
+	private static String key(int id) {
+		return String.format("benchmark/client%0" + KEY_ID_DIGITS + "d", id);
+	}
+
+	/**
+	 * Get number of LIST prefixes.
+	 * 
+	 * @param depth number of key id digits used for the prefix
+	 * @return number of prefixes
+	 */
+	private static int prefixes(int depth) {
+		int prefixes = 1;
+		for (int digit = 0; digit < depth; ++digit) {
+			prefixes *= 10;
+		}
+		return prefixes;
+	}
+
+	/**
+	 * Get LIST prefix.
+	 * 
+	 * @param index index of the prefix. Range {@code [0..10^depth)}.
+	 * @param depth number of key id digits used for the prefix. {@code 0}
+	 *              for the whole benchmark prefix.
+	 * @return prefix
+	 */
+	private static String prefix(int index, int depth) {
+		if (depth == 0) {
+			return "benchmark/";
+		}
+		return String.format("benchmark/client%0" + depth + "d", index);
+	}
+
+	/**
+	 * Get payload for PUT request.
+	 * 
+	 * @param config   CLI configuration
+	 * @param requests current number of request.
+	 * @return payload
+	 */
+	private static String payload(Config config, int requests) {
+		String payload = config.payload;
+		if (payload == null) {
+			payload = "Hello, S3, %05d!";
+		}
+		payload = String.format(payload, requests);
+		if (config.payloadLength != null && config.additionalPayload.length() > payload.length()) {
+			payload += " " + config.additionalPayload.substring(payload.length() + 1);
+		}
+		return payload;
+	}
+
 	private static String additionalPayload(int length) {
 		if (length > 0) {
 			StringBuilder text = new StringBuilder(length);
@@ -189,10 +841,12 @@ public class S3Benchmark {
 	/**
 	 * Create a S3 asynchronous
 	 * 
-	 * @param config CLI configuration
+	 * @param config      CLI configuration
+	 * @param conditional {@code true} to use conditional GET requests with the
+	 *                    last etags
 	 * @return create client
 	 */
-	private static S3AsyncClientFacade createS3Client(Config config) {
+	private static S3AsyncClientFacade createS3Client(Config config, boolean conditional) {
 
 		S3AsyncClientFacade.Builder builder = S3AsyncClientFacade.builder();
 		if (config.endpoint != null) {
@@ -204,6 +858,22 @@ public class S3Benchmark {
 		builder.region(config.region);
 		builder.keyId(config.accessKey);
 		builder.keySecret(config.secret);
+		builder.conditional(conditional);
+		if (config.cacheSize != null) {
+			builder.cache(new ObjectCache(config.cacheSize, config.cacheEviction, config.cacheOffHeap,
+					config.cacheTtl, TimeUnit.SECONDS));
+		}
+		builder.profile(config.profile);
+		builder.hedge(config.hedgeDelay == null ? 0 : config.hedgeDelay,
+				config.hedgePercentile == null ? 0 : config.hedgePercentile);
+		builder.deadline(config.deadline == null ? 0 : config.deadline);
+		builder.cancel(config.hedgeCancel);
+		if (config.capture != null) {
+			builder.capture(config.capture);
+		}
+		if (config.bandwidthLimit != null) {
+			builder.bandwidthLimiter(new BandwidthLimiter((long) (config.bandwidthLimit * 1024 * 1024)));
+		}
 		return builder.build();
 	}
 }
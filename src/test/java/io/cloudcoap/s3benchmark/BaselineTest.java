@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the baseline comparison.
+ */
+public class BaselineTest {
+
+	/**
+	 * Tolerance for p-values.
+	 */
+	private static final double EPSILON = 0.0005;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Baseline with 10% throughput and 20% latency tolerance, 1 percentage
+	 * point error tolerance and 5% significance.
+	 */
+	private final Baseline baseline = new Baseline(10, 20, 1, 0.05);
+
+	/**
+	 * Completely separated samples result in {@code U = 0}. With
+	 * {@code n1 = n2 = 3} that's {@code z = (0 - 4.5 + 0.5) / sqrt(5.25)}.
+	 */
+	@Test
+	public void testMannWhitneySeparated() {
+		double p = Baseline.mannWhitney(new long[] { 1, 2, 3 }, new long[] { 4, 5, 6 });
+		assertEquals(0.0404, p, EPSILON);
+	}
+
+	/**
+	 * Reversed samples result in {@code U = 9}.
+	 */
+	@Test
+	public void testMannWhitneyReversed() {
+		double p = Baseline.mannWhitney(new long[] { 4, 5, 6 }, new long[] { 1, 2, 3 });
+		assertEquals(0.9854, p, EPSILON);
+	}
+
+	/**
+	 * Interleaved samples result in {@code U = 3}.
+	 */
+	@Test
+	public void testMannWhitneyInterleaved() {
+		double p = Baseline.mannWhitney(new long[] { 70, 90, 110 }, new long[] { 95, 100, 105 });
+		assertEquals(0.3313, p, EPSILON);
+	}
+
+	/**
+	 * Equal samples use average ranks and result in {@code U = 4.5}.
+	 */
+	@Test
+	public void testMannWhitneyTies() {
+		double p = Baseline.mannWhitney(new long[] { 5, 5, 5 }, new long[] { 5, 5, 5 });
+		assertEquals(0.5864, p, EPSILON);
+	}
+
+	/**
+	 * Larger samples with {@code n1 = n2 = 10} result in {@code U = 12}. With
+	 * {@code z = (12 - 50 + 0.5) / sqrt(175)}.
+	 */
+	@Test
+	public void testMannWhitneyLarger() {
+		long[] lower = { 1, 2, 3, 4, 5, 6, 9, 10, 13, 14 };
+		long[] higher = { 7, 8, 11, 12, 15, 16, 17, 18, 19, 20 };
+		double p = Baseline.mannWhitney(lower, higher);
+		assertEquals(0.0023, p, EPSILON);
+	}
+
+	@Test
+	public void testNoRegression() {
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 });
+		List<BenchmarkResult> current = results(98, new long[] { 97, 98, 99 });
+		assertFalse(baseline.compare(base, current));
+	}
+
+	@Test
+	public void testSignificantThroughputRegression() {
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 });
+		List<BenchmarkResult> current = results(80, new long[] { 79, 80, 81 });
+		assertTrue(baseline.compare(base, current));
+	}
+
+	@Test
+	public void testInsignificantThroughputRegression() {
+		List<BenchmarkResult> base = results(100, new long[] { 95, 100, 105 });
+		List<BenchmarkResult> current = results(80, new long[] { 70, 90, 110 });
+		assertFalse(baseline.compare(base, current));
+	}
+
+	@Test
+	public void testThroughputRegressionWithoutSamples() {
+		List<BenchmarkResult> base = results(100, new long[] { 95, 100 });
+		List<BenchmarkResult> current = results(80, new long[] { 70, 90 });
+		assertTrue(baseline.compare(base, current));
+	}
+
+	@Test
+	public void testLatencyRegression() {
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 }, 1000,
+				new long[] { 1000, 1000, 1000 });
+		List<BenchmarkResult> current = results(100, new long[] { 100, 101, 102 }, 2000,
+				new long[] { 2000, 2100, 2200 });
+		assertTrue(baseline.compare(base, current));
+	}
+
+	@Test
+	public void testInsignificantLatencyRegression() {
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 }, 1000,
+				new long[] { 1000, 2000, 3000 });
+		List<BenchmarkResult> current = results(100, new long[] { 100, 101, 102 }, 2000,
+				new long[] { 1500, 2500, 2000 });
+		assertFalse(baseline.compare(base, current));
+	}
+
+	@Test
+	public void testErrorRegression() {
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 });
+		BenchmarkResult failing = new BenchmarkResult("GET", 10000, 1000, 20, 0, 0, 0, latency(1000, 1000),
+				new long[] { 100, 101, 102 }, new long[] { 1000, 1000, 1000 });
+		assertTrue(baseline.compare(base, Collections.singletonList(failing)));
+	}
+
+	@Test
+	public void testMissingResult() {
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 });
+		assertTrue(baseline.compare(base, Collections.<BenchmarkResult>emptyList()));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		File file = folder.newFile("baseline.properties");
+		List<BenchmarkResult> base = results(100, new long[] { 100, 101, 102 }, 1000,
+				new long[] { 1000, 1100, 1200 });
+		Baseline.save(file, base);
+		List<BenchmarkResult> loaded = Baseline.load(file);
+		assertEquals(1, loaded.size());
+		BenchmarkResult result = loaded.get(0);
+		assertEquals("GET", result.name);
+		assertEquals(100, result.getRequestsPerSecond());
+		assertEquals(base.get(0).p99, result.p99);
+		assertEquals(Arrays.toString(new long[] { 100, 101, 102 }), Arrays.toString(result.throughputSamples));
+		assertEquals(Arrays.toString(new long[] { 1000, 1100, 1200 }), Arrays.toString(result.p99Samples));
+		assertFalse(baseline.compare(base, loaded));
+	}
+
+	/**
+	 * Create results with 1ms latency percentiles.
+	 * 
+	 * @param requestsPerSecond requests per second
+	 * @param throughputSamples requests per second of the intervals
+	 * @return list with "GET" result
+	 */
+	private static List<BenchmarkResult> results(long requestsPerSecond, long[] throughputSamples) {
+		return results(requestsPerSecond, throughputSamples, 1000, new long[] { 1000, 1000, 1000 });
+	}
+
+	/**
+	 * Create results.
+	 * 
+	 * @param requestsPerSecond requests per second
+	 * @param throughputSamples requests per second of the intervals
+	 * @param p99               99% latency percentile in microseconds. The 50%
+	 *                          latency percentile is always 1ms.
+	 * @param p99Samples        99% latency percentile in microseconds of the
+	 *                          intervals
+	 * @return list with "GET" result
+	 */
+	private static List<BenchmarkResult> results(long requestsPerSecond, long[] throughputSamples, long p99,
+			long[] p99Samples) {
+		return Collections.singletonList(new BenchmarkResult("GET", 10000, requestsPerSecond * 10, 0, 0, 0, 0,
+				latency(1000, p99), throughputSamples, p99Samples));
+	}
+
+	/**
+	 * Create histogram with half of the latencies at each value.
+	 * 
+	 * @param p50 50% latency percentile in microseconds
+	 * @param p99 99% latency percentile in microseconds
+	 * @return histogram
+	 */
+	private static LatencyHistogram latency(long p50, long p99) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int index = 0; index < 5; ++index) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(p50));
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(p99));
+		}
+		return histogram;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testLinearBuckets() {
+		for (int micros = 0; micros < 32; ++micros) {
+			assertEquals(micros, LatencyHistogram.index(micros));
+			assertEquals(micros, LatencyHistogram.highest(micros));
+		}
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		// [32..33], [34..35], ..., [62..63]
+		assertEquals(32, LatencyHistogram.index(32));
+		assertEquals(32, LatencyHistogram.index(33));
+		assertEquals(33, LatencyHistogram.highest(32));
+		assertEquals(33, LatencyHistogram.index(34));
+		assertEquals(47, LatencyHistogram.index(63));
+		assertEquals(63, LatencyHistogram.highest(47));
+		// [64..67], [68..71], ..., [124..127]
+		assertEquals(48, LatencyHistogram.index(64));
+		assertEquals(48, LatencyHistogram.index(67));
+		assertEquals(67, LatencyHistogram.highest(48));
+		assertEquals(49, LatencyHistogram.index(68));
+		assertEquals(63, LatencyHistogram.index(127));
+		assertEquals(127, LatencyHistogram.highest(63));
+		assertEquals(64, LatencyHistogram.index(128));
+		// [1024..1087]
+		assertEquals(112, LatencyHistogram.index(1024));
+		assertEquals(112, LatencyHistogram.index(1087));
+		assertEquals(1087, LatencyHistogram.highest(112));
+		assertEquals(113, LatencyHistogram.index(1088));
+	}
+
+	@Test
+	public void testLargestBucket() {
+		// [2^62..2^62 + 2^58 - 1], ..., [2^63 - 2^58..2^63 - 1]
+		assertEquals(944, LatencyHistogram.index(1L << 62));
+		assertEquals((1L << 62) - 1, LatencyHistogram.highest(943));
+		assertEquals(959, LatencyHistogram.index(Long.MAX_VALUE));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(959));
+	}
+
+	@Test
+	public void testBucketsAreContiguous() {
+		int last = 0;
+		for (long micros = 1; micros < (1L << 20); ++micros) {
+			int index = LatencyHistogram.index(micros);
+			assertTrue("bucket of " + micros, LatencyHistogram.highest(index) >= micros);
+			if (index != last) {
+				assertEquals("bucket of " + micros, last + 1, index);
+				assertEquals("bucket before " + micros, micros - 1, LatencyHistogram.highest(last));
+				last = index;
+			}
+		}
+	}
+
+	@Test
+	public void testPrecision() {
+		for (long micros = 32; micros < (1L << 20); micros += 7) {
+			long highest = LatencyHistogram.highest(LatencyHistogram.index(micros));
+			assertTrue("precision of " + micros, (highest - micros) * 16 < micros);
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int micros = 1; micros <= 100; ++micros) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50, histogram.getAverage());
+		assertEquals(100, histogram.getMax());
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(10, histogram.getPercentile(10));
+		// 50 is in [50..51]
+		assertEquals(51, histogram.getPercentile(50));
+		// 90 is in [88..91]
+		assertEquals(91, histogram.getPercentile(90));
+		// 99 is in [96..99]
+		assertEquals(99, histogram.getPercentile(99));
+		// 100 is in [100..103], limited by maximum
+		assertEquals(100, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testTransfer() {
+		LatencyHistogram current = new LatencyHistogram();
+		LatencyHistogram overall = new LatencyHistogram();
+		current.record(TimeUnit.MILLISECONDS.toNanos(2));
+		current.transferTo(overall);
+		current.record(TimeUnit.MILLISECONDS.toNanos(4));
+		assertEquals(1, current.getCount());
+		assertEquals(4000, current.getMax());
+		assertEquals(1, overall.getCount());
+		assertEquals(2000, overall.getMax());
+		current.addTo(overall);
+		assertEquals(1, current.getCount());
+		assertEquals(2, overall.getCount());
+		assertEquals(3000, overall.getAverage());
+		assertEquals(4000, overall.getPercentile(99));
+	}
+}
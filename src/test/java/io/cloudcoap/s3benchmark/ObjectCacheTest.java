@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Achim Kraus, cloudcoap.net.
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ * 
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v20.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ * 
+ ******************************************************************************/
+package io.cloudcoap.s3benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of the object cache.
+ */
+public class ObjectCacheTest {
+
+	@Test
+	public void testLruOrder() {
+		ObjectCache cache = new ObjectCache(30, ObjectCache.Eviction.LRU, false, 60, TimeUnit.SECONDS);
+		cache.put("a", "ea", data(10));
+		cache.put("b", "eb", data(10));
+		cache.put("c", "ec", data(10));
+		assertEquals(30, cache.getBytes());
+		// "b" becomes least recently used
+		assertNotNull(cache.get("a"));
+		cache.put("d", "ed", data(10));
+		assertEquals(30, cache.getBytes());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+	}
+
+	@Test
+	public void testReplace() {
+		ObjectCache cache = new ObjectCache(100, ObjectCache.Eviction.LRU, false, 60, TimeUnit.SECONDS);
+		cache.put("a", "e1", data(10));
+		cache.put("a", "e2", data(20));
+		assertEquals(20, cache.getBytes());
+		assertEquals("e2", cache.get("a").eTag);
+		assertEquals(20, cache.get("a").size);
+	}
+
+	@Test
+	public void testInvalidate() {
+		for (ObjectCache.Eviction eviction : ObjectCache.Eviction.values()) {
+			ObjectCache cache = new ObjectCache(1000, eviction, false, 60, TimeUnit.SECONDS);
+			cache.put("a", "ea", data(10));
+			cache.put("b", "eb", data(10));
+			cache.invalidate("a");
+			cache.invalidate("x");
+			assertEquals(eviction.name(), 10, cache.getBytes());
+			assertNull(eviction.name(), cache.get("a"));
+			assertNotNull(eviction.name(), cache.get("b"));
+			cache.invalidate("b");
+			assertEquals(eviction.name(), 0, cache.getBytes());
+		}
+	}
+
+	@Test
+	public void testOversizedLru() {
+		ObjectCache cache = new ObjectCache(100, ObjectCache.Eviction.LRU, false, 60, TimeUnit.SECONDS);
+		cache.put("a", "ea", data(50));
+		cache.put("big", "eb", data(101));
+		assertNull(cache.get("big"));
+		assertNotNull(cache.get("a"));
+		assertEquals(50, cache.getBytes());
+		cache.put("full", "ef", data(100));
+		assertNotNull(cache.get("full"));
+		assertNull(cache.get("a"));
+		assertEquals(100, cache.getBytes());
+	}
+
+	/**
+	 * Objects larger than the main LRU must not evict the cached objects.
+	 */
+	@Test
+	public void testOversizedTinyLfu() {
+		// window 10 bytes, main 990 bytes
+		ObjectCache cache = new ObjectCache(1000, ObjectCache.Eviction.TINY_LFU, false, 60, TimeUnit.SECONDS);
+		fill(cache, 99);
+		// moves "k98" from the window into the main LRU
+		cache.put("next", "en", data(10));
+		assertEquals(1000, cache.getBytes());
+		for (int index = 0; index < 10; ++index) {
+			cache.get("big");
+		}
+		cache.put("big", "eb", data(995));
+		assertNull(cache.get("big"));
+		assertEquals(1000, cache.getBytes());
+		for (int index = 0; index < 99; ++index) {
+			assertNotNull("k" + index, cache.get("k" + index));
+		}
+	}
+
+	@Test
+	public void testAdmissionRejected() {
+		// window 10 bytes, main 990 bytes
+		ObjectCache cache = new ObjectCache(1000, ObjectCache.Eviction.TINY_LFU, false, 60, TimeUnit.SECONDS);
+		fill(cache, 100);
+		for (int index = 0; index < 99; ++index) {
+			cache.get("k" + index);
+		}
+		// moves "k99" with lower frequency than the victim "k0" out of the
+		// window
+		cache.put("next", "en", data(10));
+		assertEquals(1000, cache.getBytes());
+		assertNull(cache.get("k99"));
+		for (int index = 0; index < 99; ++index) {
+			assertNotNull("k" + index, cache.get("k" + index));
+		}
+		assertNotNull(cache.get("next"));
+	}
+
+	@Test
+	public void testAdmissionAccepted() {
+		// window 10 bytes, main 990 bytes
+		ObjectCache cache = new ObjectCache(1000, ObjectCache.Eviction.TINY_LFU, false, 60, TimeUnit.SECONDS);
+		fill(cache, 100);
+		// misses increase the frequency of "hot"
+		for (int index = 0; index < 10; ++index) {
+			assertNull(cache.get("hot"));
+		}
+		cache.put("hot", "eh", data(10));
+		// moves "hot" out of the window and evicts the least recently used
+		cache.put("next", "en", data(10));
+		assertEquals(1000, cache.getBytes());
+		assertNotNull(cache.get("hot"));
+		assertNotNull(cache.get("next"));
+		int evicted = 0;
+		for (int index = 0; index < 100; ++index) {
+			if (cache.get("k" + index) == null) {
+				++evicted;
+			}
+		}
+		assertEquals(2, evicted);
+	}
+
+	@Test
+	public void testByteBounds() {
+		Random random = new Random(4711);
+		for (ObjectCache.Eviction eviction : ObjectCache.Eviction.values()) {
+			ObjectCache cache = new ObjectCache(10000, eviction, false, 60, TimeUnit.SECONDS);
+			for (int index = 0; index < 10000; ++index) {
+				String key = "k" + random.nextInt(500);
+				cache.get(key);
+				int size = random.nextInt(500);
+				cache.put(key, "e", data(size));
+				long bytes = cache.getBytes();
+				assertTrue(eviction + " " + bytes + " bytes", bytes >= 0 && bytes <= 10000);
+				if (random.nextInt(10) == 0) {
+					cache.invalidate("k" + random.nextInt(500));
+				}
+			}
+			long bytes = 0;
+			for (int index = 0; index < 500; ++index) {
+				ObjectCache.Entry entry = cache.get("k" + index);
+				if (entry != null) {
+					bytes += entry.size;
+				}
+			}
+			assertEquals(eviction.name(), bytes, cache.getBytes());
+		}
+	}
+
+	@Test
+	public void testTtl() {
+		ObjectCache cache = new ObjectCache(1000, ObjectCache.Eviction.LRU, false, 60, TimeUnit.SECONDS);
+		cache.put("a", "ea", data(10));
+		ObjectCache.Entry entry = cache.get("a");
+		long now = System.nanoTime();
+		assertFalse(entry.isExpired(now));
+		assertTrue(entry.isExpired(now + TimeUnit.SECONDS.toNanos(61)));
+		cache = new ObjectCache(1000, ObjectCache.Eviction.LRU, false, 0, TimeUnit.SECONDS);
+		cache.put("a", "ea", data(10));
+		entry = cache.get("a");
+		assertTrue(entry.isExpired(System.nanoTime()));
+		// refresh with zero ttl keeps the entry expired
+		cache.refresh(entry);
+		assertTrue(entry.isExpired(System.nanoTime()));
+	}
+
+	@Test
+	public void testRefresh() {
+		ObjectCache cache = new ObjectCache(1000, ObjectCache.Eviction.LRU, false, 60, TimeUnit.SECONDS);
+		cache.put("a", "ea", data(10));
+		ObjectCache.Entry entry = cache.get("a");
+		long expires = System.nanoTime() + TimeUnit.SECONDS.toNanos(61);
+		assertTrue(entry.isExpired(expires));
+		cache.refresh(entry);
+		assertTrue(entry.isExpired(expires + TimeUnit.SECONDS.toNanos(1)));
+		assertFalse(entry.isExpired(System.nanoTime() + TimeUnit.SECONDS.toNanos(59)));
+	}
+
+	@Test
+	public void testOffHeap() {
+		ObjectCache cache = new ObjectCache(1000, ObjectCache.Eviction.TINY_LFU, true, 60, TimeUnit.SECONDS);
+		byte[] data = data(100);
+		cache.put("a", "ea", data);
+		cache.put("b", "eb", data(10));
+		ObjectCache.Entry entry = cache.get("a");
+		assertNotNull(entry);
+		assertArrayEquals(data, entry.read());
+		assertArrayEquals(data, entry.read());
+	}
+
+	/**
+	 * Fill cache with 10 bytes objects "k0" to "k(n-1)".
+	 * 
+	 * @param cache cache
+	 * @param n     number of objects
+	 */
+	private static void fill(ObjectCache cache, int n) {
+		for (int index = 0; index < n; ++index) {
+			cache.put("k" + index, "e" + index, data(10));
+		}
+	}
+
+	/**
+	 * Create data.
+	 * 
+	 * @param size size in bytes
+	 * @return data
+	 */
+	private static byte[] data(int size) {
+		byte[] data = new byte[size];
+		for (int index = 0; index < size; ++index) {
+			data[index] = (byte) index;
+		}
+		return data;
+	}
+}